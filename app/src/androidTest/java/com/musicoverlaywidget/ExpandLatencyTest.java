@@ -0,0 +1,120 @@
+package com.musicoverlaywidget;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.Settings;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.musicoverlaywidget.controllers.OnWidgetStateChangedListener;
+import com.musicoverlaywidget.controllers.State;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures tap-to-first-expanded-frame latency, {@link ExpandTimings#firstFrameLatencyMillis()},
+ * with {@link WidgetBuilder#keepExpandedAttached(boolean)} off and on. Widget is expanded and
+ * collapsed {@link #TOGGLES} times in each mode, the first expand is reported apart, because
+ * parked window is added by it. Medians are logged with tag {@link #TAG} and reported as
+ * instrumentation status, e.g. <code>adb shell am instrument -w -r -e class
+ * com.musicoverlaywidget.ExpandLatencyTest ...</code>.
+ * Needs permission to draw overlays, test is skipped without it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExpandLatencyTest {
+
+    private static final String TAG = "ExpandLatency";
+    private static final int TOGGLES = 20;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private Instrumentation instrumentation;
+    private Context context;
+
+    @Before
+    public void setUp() {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        context = instrumentation.getTargetContext();
+        assumeTrue("overlay permission is not granted", Build.VERSION.SDK_INT < Build.VERSION_CODES.M
+                || Settings.canDrawOverlays(context));
+    }
+
+    @Test
+    public void firstFrameLatency() throws Exception {
+        Bundle results = new Bundle();
+        measure(false, results);
+        measure(true, results);
+        instrumentation.sendStatus(0, results);
+    }
+
+    private void measure(boolean keepExpandedAttached, @NonNull Bundle results) throws Exception {
+        BlockingQueue<State> states = new LinkedBlockingQueue<>();
+        PlayerWidget[] widget = new PlayerWidget[1];
+        instrumentation.runOnMainSync(() -> {
+            widget[0] = WidgetBuilder.builder()
+                    .context(context)
+                    .build()
+                    .keepExpandedAttached(keepExpandedAttached)
+                    .build();
+            widget[0].controller().onWidgetStateChangedListener(new OnWidgetStateChangedListener() {
+                @Override
+                public void onWidgetStateChanged(@NonNull State state) {
+                    states.add(state);
+                }
+
+                @Override
+                public void onWidgetPositionChanged(int cx, int cy) {
+
+                }
+            });
+            widget[0].show(100, 100);
+        });
+        // initial snap to edge
+        Thread.sleep(1000);
+        float first = -1;
+        float[] latencies = new float[TOGGLES - 1];
+        try {
+            for (int i = 0; i < TOGGLES; i++) {
+                instrumentation.runOnMainSync(widget[0]::expand);
+                assertEquals(State.EXPANDED, states.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                ExpandTimings[] expandTimings = new ExpandTimings[1];
+                instrumentation.runOnMainSync(() -> expandTimings[0] = widget[0].controller().expandTimings());
+                ExpandTimings timings = expandTimings[0];
+                assertTrue("first frame not recorded", timings.firstFrameLatencyMillis() >= 0);
+                assertEquals(keepExpandedAttached && i > 0, timings.windowReused());
+                if (i == 0) {
+                    first = timings.firstFrameLatencyMillis();
+                } else {
+                    latencies[i - 1] = timings.firstFrameLatencyMillis();
+                }
+                instrumentation.runOnMainSync(widget[0]::collapse);
+                assertEquals(State.COLLAPSED, states.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                instrumentation.waitForIdleSync();
+            }
+        } finally {
+            instrumentation.runOnMainSync(widget[0]::hide);
+        }
+        Arrays.sort(latencies);
+        float median = latencies[latencies.length / 2];
+        String key = keepExpandedAttached ? "keepExpandedAttached" : "removeExpanded";
+        Log.i(TAG, key + ": first expand " + first + " ms, median of next " + latencies.length
+                + " expands " + median + " ms, min " + latencies[0] + " ms, max "
+                + latencies[latencies.length - 1] + " ms");
+        results.putFloat(key + ".firstMillis", first);
+        results.putFloat(key + ".medianMillis", median);
+    }
+}
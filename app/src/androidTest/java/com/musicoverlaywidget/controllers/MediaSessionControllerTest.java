@@ -0,0 +1,262 @@
+package com.musicoverlaywidget.controllers;
+
+import android.app.Instrumentation;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import com.musicoverlaywidget.Configuration;
+import com.musicoverlaywidget.ExpandTimings;
+import com.musicoverlaywidget.views.animations.FrameStats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * {@link MediaSessionController} connected to a media session living in test process.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MediaSessionControllerTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final Object widgetInitiator = new Object();
+    private final BlockingQueue<Change> changes = new LinkedBlockingQueue<>();
+    private Instrumentation instrumentation;
+    private FakeController widgetController;
+    private OnControlsClickListener previousListener;
+    private PlaybackState playbackState;
+    private MediaSessionCompat session;
+    private MediaSessionController controller;
+
+    @Before
+    public void setUp() throws Exception {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        widgetController = new FakeController();
+        previousListener = new FakeListener();
+        widgetController.onControlsClickListener(previousListener);
+        instrumentation.runOnMainSync(() -> {
+            playbackState = new PlaybackState();
+            playbackState.addPlaybackStateListener(new PlaybackState.SimplePlaybackStateListener() {
+                @Override
+                public void onPlaybackChanged(@NonNull PlaybackState.Snapshot oldSnapshot,
+                                              @NonNull PlaybackState.Snapshot newSnapshot, Object initiator) {
+                    changes.add(new Change(newSnapshot.state(), initiator));
+                }
+            });
+            session = new MediaSessionCompat(instrumentation.getTargetContext(), getClass().getSimpleName());
+            session.setCallback(new MediaSessionCompat.Callback() {
+                @Override
+                public void onPlay() {
+                    // player needs to buffer first, toggle completes only when it plays
+                    session.setPlaybackState(state(PlaybackStateCompat.STATE_BUFFERING));
+                    session.setPlaybackState(state(PlaybackStateCompat.STATE_PLAYING));
+                }
+
+                @Override
+                public void onPause() {
+                    session.setPlaybackState(state(PlaybackStateCompat.STATE_PAUSED));
+                }
+            });
+            session.setFlags(MediaSessionCompat.FLAG_HANDLES_TRANSPORT_CONTROLS);
+            session.setActive(true);
+        });
+        controller = new MediaSessionController(instrumentation.getTargetContext(), session.getSessionToken(),
+                playbackState, widgetController, previousListener, widgetInitiator);
+        // initial sync with session
+        awaitChange(Configuration.STATE_STOPPED);
+    }
+
+    @After
+    public void tearDown() {
+        controller.release();
+        instrumentation.runOnMainSync(() -> session.release());
+    }
+
+    @Test
+    public void sessionChangeIsInitiatedByController() throws Exception {
+        instrumentation.runOnMainSync(() -> session.setPlaybackState(state(PlaybackStateCompat.STATE_PLAYING)));
+
+        assertSame(controller, awaitChange(Configuration.STATE_PLAYING));
+        assertEquals(Configuration.STATE_PLAYING, playbackState.state());
+    }
+
+    @Test
+    public void widgetToggleCompletesOnRequestedState() throws Exception {
+        instrumentation.runOnMainSync(() -> widgetController.onControlsClickListener.onPlayPauseClicked());
+
+        // buffering is mapped to paused and must not consume the toggle
+        assertSame(controller, awaitChange(Configuration.STATE_PAUSED));
+        assertSame(widgetInitiator, awaitChange(Configuration.STATE_PLAYING));
+
+        instrumentation.runOnMainSync(() -> session.setPlaybackState(state(PlaybackStateCompat.STATE_PAUSED)));
+
+        assertSame(controller, awaitChange(Configuration.STATE_PAUSED));
+    }
+
+    @Test
+    public void releaseRestoresPreviousListener() {
+        assertNotNull(widgetController.onControlsClickListener);
+
+        controller.release();
+
+        assertSame(previousListener, widgetController.onControlsClickListener);
+    }
+
+    private Object awaitChange(int state) throws InterruptedException {
+        while (true) {
+            Change change = changes.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull("No change to state " + state, change);
+            if (change.state == state) {
+                return change.initiator;
+            }
+        }
+    }
+
+    private static PlaybackStateCompat state(int state) {
+        return new PlaybackStateCompat.Builder()
+                .setActions(PlaybackStateCompat.ACTION_PLAY_PAUSE)
+                .setState(state, 0, 1f)
+                .build();
+    }
+
+    private static final class Change {
+
+        private final int state;
+        private final Object initiator;
+
+        Change(int state, Object initiator) {
+            this.state = state;
+            this.initiator = initiator;
+        }
+    }
+
+    private static final class FakeController implements PlaybackController {
+
+        private volatile OnControlsClickListener onControlsClickListener;
+
+        @Override
+        public void start() {
+
+        }
+
+        @Override
+        public void pause() {
+
+        }
+
+        @Override
+        public void stop() {
+
+        }
+
+        @Override
+        public int duration() {
+            return 0;
+        }
+
+        @Override
+        public void duration(int duration) {
+
+        }
+
+        @Override
+        public int position() {
+            return 0;
+        }
+
+        @Override
+        public void position(int position) {
+
+        }
+
+        @Override
+        public void position(int position, long updateTime, float speed) {
+
+        }
+
+        @Override
+        public float speed() {
+            return 1;
+        }
+
+        @NonNull
+        @Override
+        public PlaybackState.Editor edit() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onControlsClickListener(@Nullable OnControlsClickListener onControlsClickListener) {
+            this.onControlsClickListener = onControlsClickListener;
+        }
+
+        @Override
+        public void onWidgetStateChangedListener(@Nullable OnWidgetStateChangedListener onWidgetStateChangedListener) {
+
+        }
+
+        @NonNull
+        @Override
+        public ExpandTimings expandTimings() {
+            throw new UnsupportedOperationException();
+        }
+
+        @NonNull
+        @Override
+        public FrameStats.Snapshot frameStats() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void resetFrameStats() {
+
+        }
+
+        @Override
+        public long windowLayoutUpdates() {
+            return 0;
+        }
+
+        @Override
+        public long windowLayoutUpdatesAvoided() {
+            return 0;
+        }
+    }
+
+    private static final class FakeListener implements OnControlsClickListener {
+
+        @Override
+        public boolean onPlaylistClicked() {
+            return false;
+        }
+
+        @Override
+        public void onPreviousClicked() {
+
+        }
+
+        @Override
+        public boolean onPlayPauseClicked() {
+            return false;
+        }
+
+        @Override
+        public void onNextClicked() {
+
+        }
+    }
+}
@@ -7,6 +7,8 @@ import android.view.ViewConfiguration;
 import android.view.animation.Interpolator;
 
 import com.musicoverlaywidget.controllers.PlaybackState;
+import com.musicoverlaywidget.utils.IconAtlas;
+import com.musicoverlaywidget.views.animations.AnimationClock;
 
 import java.util.Random;
 
@@ -25,6 +27,17 @@ public class Configuration {
     public static final int STATE_PAUSED = 2;
     public static final long TOUCH_ANIMATION_DURATION = 100;
 
+    /**
+     * Shadows are drawn with {@link android.graphics.Paint#setShadowLayer(float, float, float, int)},
+     * views use software layers.
+     */
+    public static final int RENDER_MODE_SOFTWARE = 0;
+
+    /**
+     * Shadows are drawn from cached pre-blurred bitmaps, views stay hardware accelerated.
+     */
+    public static final int RENDER_MODE_CACHED_SHADOW = 1;
+
     private final int lightColor;
     private final int darkColor;
     private final int progressColor;
@@ -53,6 +66,12 @@ public class Configuration {
     private final int crossOverlappedColor;
     private final Interpolator accDecInterpolator;
     private final int prevNextExtraPadding;
+    private final int renderMode;
+    private final int buttonBubblesCount;
+    private final int expandedBubblesCount;
+    private final IconAtlas iconAtlas;
+    private final int colorInterpolation;
+    private final AnimationClock animationClock;
 
     private Configuration(Builder builder) {
         this.context = builder.context;
@@ -83,6 +102,12 @@ public class Configuration {
         this.crossOverlappedColor = builder.crossOverlappedColor;
         this.accDecInterpolator = builder.accDecInterpolator;
         this.prevNextExtraPadding = builder.prevNextExtraPadding;
+        this.renderMode = builder.renderMode;
+        this.buttonBubblesCount = builder.buttonBubblesCount;
+        this.expandedBubblesCount = builder.expandedBubblesCount;
+        this.iconAtlas = builder.iconAtlas;
+        this.colorInterpolation = builder.colorInterpolation;
+        this.animationClock = builder.animationClock;
     }
 
     public Context context() {
@@ -201,6 +226,30 @@ public class Configuration {
         return prevNextExtraPadding;
     }
 
+    public int renderMode() {
+        return renderMode;
+    }
+
+    public int buttonBubblesCount() {
+        return buttonBubblesCount;
+    }
+
+    public int expandedBubblesCount() {
+        return expandedBubblesCount;
+    }
+
+    public IconAtlas iconAtlas() {
+        return iconAtlas;
+    }
+
+    public int colorInterpolation() {
+        return colorInterpolation;
+    }
+
+    public AnimationClock animationClock() {
+        return animationClock;
+    }
+
     @lombok.Builder
     @ToString
     public static class Builder {
@@ -233,6 +282,12 @@ public class Configuration {
         private int crossOverlappedColor;
         private Interpolator accDecInterpolator;
         private int prevNextExtraPadding;
+        private int renderMode;
+        private int buttonBubblesCount;
+        private int expandedBubblesCount;
+        private IconAtlas iconAtlas;
+        private int colorInterpolation;
+        private AnimationClock animationClock;
 
         public Configuration build() {
             return new Configuration(this);
@@ -0,0 +1,122 @@
+package com.musicoverlaywidget;
+
+/**
+ * Timestamps of the last expand of widget, in {@link System#nanoTime()} base.
+ * <p>
+ * Unset timestamps are <code>-1</code>. Use {@link #firstFrameLatencyMillis()} to compare
+ * tap-to-first-frame latency between widget configurations, e.g. with and without
+ * {@link WidgetBuilder#keepExpandedAttached(boolean)}.
+ */
+public final class ExpandTimings {
+
+    private long requestTime = -1;
+    private long snapEndTime = -1;
+    private long firstFrameTime = -1;
+    private long endTime = -1;
+    private boolean windowReused;
+
+    ExpandTimings() {
+    }
+
+    ExpandTimings(ExpandTimings other) {
+        this.requestTime = other.requestTime;
+        this.snapEndTime = other.snapEndTime;
+        this.firstFrameTime = other.firstFrameTime;
+        this.endTime = other.endTime;
+        this.windowReused = other.windowReused;
+    }
+
+    void onRequested(long time) {
+        requestTime = time;
+        snapEndTime = -1;
+        firstFrameTime = -1;
+        endTime = -1;
+        windowReused = false;
+    }
+
+    void onWindowShown(boolean reused) {
+        windowReused = reused;
+    }
+
+    void onSnapped(long time) {
+        if (requestTime >= 0 && snapEndTime < 0) {
+            snapEndTime = time;
+        }
+    }
+
+    void onFirstFrame(long time) {
+        if (requestTime >= 0 && firstFrameTime < 0) {
+            firstFrameTime = time;
+        }
+    }
+
+    void onExpanded(long time) {
+        if (requestTime >= 0 && endTime < 0) {
+            endTime = time;
+        }
+    }
+
+    /**
+     * @return time of {@link PlayerWidget#expand()} call
+     */
+    public long requestTime() {
+        return requestTime;
+    }
+
+    /**
+     * @return time when play/pause button reached its position for expanded widget
+     */
+    public long snapEndTime() {
+        return snapEndTime;
+    }
+
+    /**
+     * @return time of first drawn frame of expanded widget
+     */
+    public long firstFrameTime() {
+        return firstFrameTime;
+    }
+
+    /**
+     * @return time when expand animation has finished
+     */
+    public long endTime() {
+        return endTime;
+    }
+
+    /**
+     * @return true if parked expanded window was reused instead of adding new one
+     */
+    public boolean windowReused() {
+        return windowReused;
+    }
+
+    /**
+     * @return time from expand request to first drawn frame in milliseconds, or <code>-1</code> if unknown
+     */
+    public float firstFrameLatencyMillis() {
+        if (requestTime < 0 || firstFrameTime < 0) {
+            return -1;
+        }
+        return (firstFrameTime - requestTime) / 1000000f;
+    }
+
+    /**
+     * @return time from expand request to the end of expand animation in milliseconds, or <code>-1</code> if unknown
+     */
+    public float totalMillis() {
+        if (requestTime < 0 || endTime < 0) {
+            return -1;
+        }
+        return (endTime - requestTime) / 1000000f;
+    }
+
+    @Override
+    public String toString() {
+        return "ExpandTimings{" +
+                "firstFrameLatencyMillis=" + firstFrameLatencyMillis() +
+                ", totalMillis=" + totalMillis() +
+                ", windowReused=" + windowReused +
+                '}';
+    }
+}
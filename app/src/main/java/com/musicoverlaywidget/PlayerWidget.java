@@ -1,8 +1,6 @@
 package com.musicoverlaywidget;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ValueAnimator;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.graphics.PixelFormat;
 import android.graphics.Point;
@@ -10,10 +8,14 @@ import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Handler;
+import android.os.RemoteException;
 import android.os.Vibrator;
+import android.provider.Settings;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.content.ContextCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
@@ -21,16 +23,23 @@ import android.view.View;
 import android.view.WindowManager;
 import android.view.animation.AccelerateDecelerateInterpolator;
 
-import com.musicoverlaywidget.controllers.Controller;
+import com.musicoverlaywidget.controllers.MediaSessionController;
 import com.musicoverlaywidget.controllers.OnControlsClickListener;
 import com.musicoverlaywidget.controllers.OnWidgetStateChangedListener;
+import com.musicoverlaywidget.controllers.PlaybackController;
 import com.musicoverlaywidget.controllers.PlaybackState;
 import com.musicoverlaywidget.controllers.State;
 import com.musicoverlaywidget.managers.TouchManager;
+import com.musicoverlaywidget.managers.WindowLayoutBatcher;
+import com.musicoverlaywidget.utils.ColorChanger;
 import com.musicoverlaywidget.utils.DrawableUtils;
+import com.musicoverlaywidget.utils.IconAtlas;
 import com.musicoverlaywidget.views.ExpandCollapseWidget;
 import com.musicoverlaywidget.views.PlayPauseButton;
 import com.musicoverlaywidget.views.RemoveWidgetView;
+import com.musicoverlaywidget.views.animations.AnimationChannel;
+import com.musicoverlaywidget.views.animations.AnimationClock;
+import com.musicoverlaywidget.views.animations.FrameStats;
 import com.thefinestartist.utils.ui.DisplayUtil;
 
 import java.util.Random;
@@ -46,8 +55,13 @@ public class PlayerWidget {
     private final PlayPauseButton playPauseButton;
     private final ExpandCollapseWidget expandCollapseWidget;
     private final RemoveWidgetView removeWidgetView;
-    private final Controller controller;
+    private final ExpandTimings expandTimings;
+    private final ExpandSequence expandSequence;
+    private final FrameStats frameStats;
+    private final PlaybackController controller;
+    private final AnimationClock animationClock;
     private final WindowManager windowManager;
+    private final WindowLayoutBatcher layoutBatcher;
     private final Vibrator vibrator;
     private final Handler handler;
     private final Point screenSize;
@@ -63,13 +77,24 @@ public class PlayerWidget {
     private PlaybackState playbackState;
     private int animatedRemBtnYPos = -1;
     private float widgetWidth, widgetHeight, radius;
+    private int renderMode;
     private boolean shown;
     private boolean released;
     private boolean removeWidgetShown;
+    private final boolean keepExpandedAttached;
+    private boolean expandedAttached;
     private OnWidgetStateChangedListener onWidgetStateChangedListener;
 
 
     public PlayerWidget(@NonNull WidgetBuilder builder) {
+        this(builder, new AnimationClock(Choreographer.getInstance()));
+    }
+
+    /**
+     * @param builder widget builder
+     * @param animationClock clock driving all widget animations, e.g. manually ticked clock for offscreen rendering
+     */
+    PlayerWidget(@NonNull WidgetBuilder builder, @NonNull AnimationClock animationClock) {
         this.context = builder.getContext().getApplicationContext();
         this.vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
         this.handler = new Handler();
@@ -77,6 +102,10 @@ public class PlayerWidget {
         this.removeBounds = new RectF();
         this.hiddenRemWidPos = new Point();
         this.visibleRemWidPos = new Point();
+        this.expandTimings = new ExpandTimings();
+        this.expandSequence = new ExpandSequence();
+        this.keepExpandedAttached = builder.isKeepExpandedAttached();
+        this.animationClock = animationClock;
         this.controller = newController();
         this.windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR2) {
@@ -86,40 +115,53 @@ public class PlayerWidget {
             screenSize.y = DisplayUtil.getHeight();
         }
         screenSize.y -= DisplayUtil.getStatusBarHeight() + navigationBarHeight();
-
-        Configuration configuration = prepareConfiguration(builder);
+        this.frameStats = new FrameStats(windowManager.getDefaultDisplay().getRefreshRate());
+
+        animationClock.frameStats(frameStats).durationScale(animatorDurationScale());
+        Configuration configuration = prepareConfiguration(builder, animationClock);
+        this.layoutBatcher = new WindowLayoutBatcher(windowManager, Choreographer.getInstance())
+                .frameStats(frameStats);
+        // animated moves are applied in the same frame they were computed
+        configuration.animationClock().frameEndListener(layoutBatcher::flush);
         playPauseButton = new PlayPauseButton(configuration);
         expandCollapseWidget = new ExpandCollapseWidget(configuration);
         removeWidgetView = new RemoveWidgetView(configuration);
+        // all views have requested their icons by now
+        configuration.iconAtlas().rasterize();
         int offsetCollapsed = context.getResources().getDimensionPixelOffset(R.dimen.widget_edge_offset_collapsed);
         int offsetExpanded = context.getResources().getDimensionPixelOffset(R.dimen.widget_edge_offset_expanded);
 
         playPauseButtonManager = new TouchManager(playPauseButton, playPauseButton.newBoundsChecker(
                 builder.isEdgeOffsetXCollapsedSet() ? builder.getEdgeOffsetXCollapsed() : offsetCollapsed,
                 builder.isEdgeOffsetYCollapsedSet() ? builder.getEdgeOffsetYCollapsed() : offsetCollapsed
-        ))
+        ), configuration.animationClock(), layoutBatcher)
                 .screenWidth(screenSize.x)
                 .screenHeight(screenSize.y);
 
         expandedWidgetManager = new TouchManager(expandCollapseWidget, expandCollapseWidget.newBoundsChecker(
                 builder.isEdgeOffsetXExpandedSet() ? builder.getEdgeOffsetXExpanded() : offsetExpanded,
                 builder.isEdgeOffsetYExpandedSet() ? builder.getEdgeOffsetYExpanded() : offsetExpanded
-        ))
+        ), configuration.animationClock(), layoutBatcher)
                 .screenWidth(screenSize.x)
                 .screenHeight(screenSize.y);
 
-        playPauseButtonManager.callback(new PlayPauseButtonCallback());
+        if (builder.isTouchPredictionMillisSet()) {
+            playPauseButtonManager.predictionMillis(builder.getTouchPredictionMillis());
+            expandedWidgetManager.predictionMillis(builder.getTouchPredictionMillis());
+        }
+        playPauseButtonManager.callback(new PlayPauseButtonCallback(configuration));
         expandedWidgetManager.callback(new ExpandCollapseWidgetCallback());
         expandCollapseWidget.onWidgetStateChangedListener(new OnWidgetStateChangedListener() {
             @Override
             public void onWidgetStateChanged(@NonNull State state) {
+                if (state == State.EXPANDED) {
+                    expandTimings.onExpanded(System.nanoTime());
+                }
                 if (state == State.COLLAPSED) {
-                    playPauseButton.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
-                    try {
-                        windowManager.removeView(expandCollapseWidget);
-                    } catch (IllegalArgumentException e) {
-                        // view not attached to window
+                    if (renderMode == Configuration.RENDER_MODE_SOFTWARE) {
+                        playPauseButton.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
                     }
+                    hideExpanded();
                     playPauseButton.enableProgressChanges(true);
                 }
                 if (onWidgetStateChangedListener != null) {
@@ -132,6 +174,7 @@ public class PlayerWidget {
 
             }
         });
+        expandCollapseWidget.setFirstExpandFrameListener(() -> expandTimings.onFirstFrame(System.nanoTime()));
         onControlsClickListener = new OnControlsClickListenerWrapper();
         expandCollapseWidget.onControlsClickListener(onControlsClickListener);
 
@@ -146,7 +189,7 @@ public class PlayerWidget {
         );
     }
 
-    private Configuration prepareConfiguration(@NonNull WidgetBuilder builder) {
+    private Configuration prepareConfiguration(@NonNull WidgetBuilder builder, @NonNull AnimationClock animationClock) {
         int darkColor = builder.isDarkColorSet() ?
                 builder.getDarkColor() :
                 ContextCompat.getColor(context, R.color.widget_dark);
@@ -211,6 +254,15 @@ public class PlayerWidget {
                 context.getResources().getDimension(R.dimen.widget_bubbles_max_size);
         int prevNextExtraPadding = context.getResources()
                 .getDimensionPixelSize(R.dimen.widget_prev_next_button_extra_padding);
+        int buttonBubblesCount = builder.isButtonBubblesCountSet() ?
+                builder.getButtonBubblesCount() :
+                PlayPauseButton.DEFAULT_BUBBLES_COUNT;
+        int expandedBubblesCount = builder.isExpandedBubblesCountSet() ?
+                builder.getExpandedBubblesCount() :
+                ExpandCollapseWidget.DEFAULT_BUBBLES_COUNT;
+        renderMode = builder.isRenderModeSet() ?
+                builder.getRenderMode() :
+                Configuration.RENDER_MODE_SOFTWARE;
 
         widgetHeight = context.getResources().getDimensionPixelSize(R.dimen.widget_player_height);
         widgetWidth = context.getResources().getDimensionPixelSize(R.dimen.widget_player_width);
@@ -246,12 +298,24 @@ public class PlayerWidget {
                 .bubblesMaxSize(bubblesMaxSize)
                 .crossColor(crossColor)
                 .crossOverlappedColor(crossOverlappedColor)
+                .renderMode(renderMode)
+                .buttonBubblesCount(buttonBubblesCount)
+                .expandedBubblesCount(expandedBubblesCount)
+                .iconAtlas(new IconAtlas())
+                .colorInterpolation(builder.isColorInterpolationSet() ?
+                        builder.getColorInterpolation() :
+                        ColorChanger.INTERPOLATION_HSV)
+                .animationClock(animationClock)
                 .build();
 
         return configBuilder.build();
     }
 
     private void show(View view, int left, int top) {
+        windowManager.addView(view, newLayoutParams(left, top));
+    }
+
+    private static WindowManager.LayoutParams newLayoutParams(int left, int top) {
         WindowManager.LayoutParams params = new WindowManager.LayoutParams(
                 WindowManager.LayoutParams.WRAP_CONTENT,
                 WindowManager.LayoutParams.WRAP_CONTENT,
@@ -264,7 +328,7 @@ public class PlayerWidget {
         params.gravity = Gravity.START | Gravity.TOP;
         params.x = left;
         params.y = top;
-        windowManager.addView(view, params);
+        return params;
     }
 
     public void show(int cx, int cy) {
@@ -272,6 +336,8 @@ public class PlayerWidget {
             return;
         }
         shown = true;
+        // developer options may have changed since widget was hidden
+        animationClock.durationScale(animatorDurationScale());
         float remWidX = screenSize.x / 2f - radius * RemoveWidgetView.SCALE_LARGE;
         hiddenRemWidPos.set((int)remWidX, (int) (screenSize.y + widgetHeight + navigationBarHeight()));
         visibleRemWidPos.set((int)remWidX, (int) (screenSize.y - radius - (hasNavigationBar() ? 0 : widgetHeight)));
@@ -297,33 +363,114 @@ public class PlayerWidget {
         }
         shown = false;
         released = true;
+        expandSequence.cancel();
         try {
+            layoutBatcher.cancel(playPauseButton);
             windowManager.removeView(playPauseButton);
         } catch (IllegalArgumentException e) {
             // view not attached to window
         }
         if (byPublic) {
             try {
+                layoutBatcher.cancel(removeWidgetView);
                 windowManager.removeView(removeWidgetView);
             } catch (IllegalArgumentException e) {
                 // view not attached to window
             }
         }
+        removeExpanded();
+        if (onWidgetStateChangedListener != null) {
+            onWidgetStateChangedListener.onWidgetStateChanged(State.REMOVED);
+        }
+    }
+
+    /**
+     * Attach expanded window at given position without showing it, or move parked window there.
+     */
+    private void prepareExpanded(int left, int top) {
+        expandTimings.onWindowShown(expandedAttached);
+        WindowManager.LayoutParams params = (WindowManager.LayoutParams) expandCollapseWidget.getLayoutParams();
+        if (expandedAttached) {
+            params.x = left;
+            params.y = top;
+            parkExpanded(params);
+            return;
+        }
+        expandCollapseWidget.setVisibility(View.INVISIBLE);
+        params = newLayoutParams(left, top);
+        params.flags = parkedFlags(params.flags);
+        windowManager.addView(expandCollapseWidget, params);
+        expandedAttached = true;
+    }
+
+    /**
+     * Reveal expanded window prepared by {@link #prepareExpanded(int, int)}.
+     */
+    private void showExpanded() {
+        WindowManager.LayoutParams params = (WindowManager.LayoutParams) expandCollapseWidget.getLayoutParams();
+        params.flags = (params.flags & ~WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE)
+                | WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH;
+        layoutBatcher.cancel(expandCollapseWidget);
+        expandCollapseWidget.setVisibility(View.VISIBLE);
+        try {
+            windowManager.updateViewLayout(expandCollapseWidget, params);
+        } catch (IllegalArgumentException e) {
+            // prepared window is gone, add new one
+            show(expandCollapseWidget, params.x, params.y);
+            expandedAttached = true;
+        }
+    }
+
+    private void parkExpanded(WindowManager.LayoutParams params) {
+        params.flags = parkedFlags(params.flags);
+        layoutBatcher.cancel(expandCollapseWidget);
+        expandCollapseWidget.setVisibility(View.INVISIBLE);
+        try {
+            windowManager.updateViewLayout(expandCollapseWidget, params);
+        } catch (IllegalArgumentException e) {
+            // view not attached to window
+            expandedAttached = false;
+        }
+    }
+
+    /**
+     * Parked window must not steal touches or collapse on outside touches.
+     */
+    private static int parkedFlags(int flags) {
+        return (flags | WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE)
+                & ~WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH;
+    }
+
+    /**
+     * Remove expanded window or park it if it should be kept attached.
+     */
+    private void hideExpanded() {
+        if (!keepExpandedAttached || !expandedAttached) {
+            removeExpanded();
+            return;
+        }
+        parkExpanded((WindowManager.LayoutParams) expandCollapseWidget.getLayoutParams());
+    }
+
+    private void removeExpanded() {
+        expandedAttached = false;
         try {
+            layoutBatcher.cancel(expandCollapseWidget);
             windowManager.removeView(expandCollapseWidget);
         } catch (IllegalArgumentException e) {
             // widget not added to window yet
         }
-        if (onWidgetStateChangedListener != null) {
-            onWidgetStateChangedListener.onWidgetStateChanged(State.REMOVED);
-        }
     }
 
 
+    /**
+     * Expand widget. Progress fade-out, snap of play/pause button to expanded bounds
+     * and preparation of expanded window run in parallel, expand animation starts when all of them are done.
+     */
     public void expand() {
+        expandTimings.onRequested(System.nanoTime());
         removeWidgetShown = false;
-        playPauseButton.enableProgressChanges(false);
-        playPauseButton.postDelayed(this::checkSpaceAndShowExpanded, PlayPauseButton.PROGRESS_CHANGES_DURATION);
+        expandSequence.start();
     }
 
     public void collapse() {
@@ -343,34 +490,6 @@ public class PlayerWidget {
         }
     }
 
-    private void checkSpaceAndShowExpanded() {
-        WindowManager.LayoutParams params = (WindowManager.LayoutParams) playPauseButton.getLayoutParams();
-        int x = params.x;
-        int y = params.y;
-        int expandDirection;
-        if (x + widgetHeight > screenSize.x / 2) {
-            expandDirection = ExpandCollapseWidget.DIRECTION_LEFT;
-        } else {
-            expandDirection = ExpandCollapseWidget.DIRECTION_RIGHT;
-        }
-
-        playPauseButtonManager.animateToBounds(ppbToExpBoundsChecker, () -> {
-            WindowManager.LayoutParams params1 = (WindowManager.LayoutParams) playPauseButton.getLayoutParams();
-            int x1 = params1.x;
-            int y1 = params1.y;
-            if (expandDirection == ExpandCollapseWidget.DIRECTION_LEFT) {
-                x1 -= widgetWidth - widgetHeight * 1.5f;
-            } else {
-                x1 += widgetHeight / 2f;
-            }
-            show(expandCollapseWidget, x1, y1);
-            playPauseButton.setLayerType(View.LAYER_TYPE_NONE, null);
-
-            expandCollapseWidget.setExpandListener(percent -> playPauseButton.setAlpha(1f - percent));
-            expandCollapseWidget.expand(expandDirection);
-        });
-    }
-
     private void updatePlayPauseButtonPosition() {
         WindowManager.LayoutParams widgetParams = (WindowManager.LayoutParams) expandCollapseWidget.getLayoutParams();
         WindowManager.LayoutParams params = (WindowManager.LayoutParams) playPauseButton.getLayoutParams();
@@ -380,24 +499,48 @@ public class PlayerWidget {
             params.x = (int) (widgetParams.x + widgetWidth - widgetHeight - radius);
         }
         params.y = widgetParams.y;
-        try {
-            windowManager.updateViewLayout(playPauseButton, params);
-        } catch (IllegalArgumentException e) {
-            // view not attached to window
-        }
+        layoutBatcher.move(playPauseButton, params);
         if (onWidgetStateChangedListener != null) {
             onWidgetStateChangedListener.onWidgetPositionChanged((int) (params.x + widgetHeight), (int) (params.y + widgetHeight));
         }
     }
 
     @NonNull
-    public Controller controller() {
+    public PlaybackController controller() {
         return controller;
     }
 
     @NonNull
-    private Controller newController() {
-        return new Controller() {
+    PlayPauseButton playPauseButton() {
+        return playPauseButton;
+    }
+
+    @NonNull
+    ExpandCollapseWidget expandCollapseWidget() {
+        return expandCollapseWidget;
+    }
+
+    @NonNull
+    RemoveWidgetView removeWidgetView() {
+        return removeWidgetView;
+    }
+
+    /**
+     * Create controller driven by media session. Call {@link MediaSessionController#release()}
+     * when it's not needed anymore.
+     * @param token session token
+     * @return controller attached to session
+     * @throws RemoteException if session can't be connected
+     */
+    @NonNull
+    public MediaSessionController mediaSessionController(@NonNull MediaSessionCompat.Token token) throws RemoteException {
+        return new MediaSessionController(context, token, playbackState, controller,
+                onControlsClickListener.onControlsClickListener, this);
+    }
+
+    @NonNull
+    private PlaybackController newController() {
+        return new PlaybackController() {
 
             @Override
             public void start() {
@@ -434,6 +577,22 @@ public class PlayerWidget {
                 playbackState.position(position);
             }
 
+            @Override
+            public void position(int position, long updateTime, float speed) {
+                playbackState.position(position, updateTime, speed);
+            }
+
+            @Override
+            public float speed() {
+                return playbackState.speed();
+            }
+
+            @NonNull
+            @Override
+            public PlaybackState.Editor edit() {
+                return playbackState.edit(this);
+            }
+
             @Override
             public void onControlsClickListener(@Nullable OnControlsClickListener onControlsClickListener) {
                 PlayerWidget.this.onControlsClickListener.onControlsClickListener(onControlsClickListener);
@@ -443,9 +602,48 @@ public class PlayerWidget {
             public void onWidgetStateChangedListener(@Nullable OnWidgetStateChangedListener onWidgetStateChangedListener) {
                 PlayerWidget.this.onWidgetStateChangedListener = onWidgetStateChangedListener;
             }
+
+            @NonNull
+            @Override
+            public ExpandTimings expandTimings() {
+                return new ExpandTimings(PlayerWidget.this.expandTimings);
+            }
+
+            @NonNull
+            @Override
+            public FrameStats.Snapshot frameStats() {
+                return frameStats.snapshot();
+            }
+
+            @Override
+            public void resetFrameStats() {
+                frameStats.reset();
+            }
+
+            @Override
+            public long windowLayoutUpdates() {
+                return layoutBatcher.issuedCount();
+            }
+
+            @Override
+            public long windowLayoutUpdatesAvoided() {
+                return layoutBatcher.avoidedCount();
+            }
         };
     }
 
+    /**
+     * Animator duration scale from developer options, applied to widget animations like to platform animators.
+     */
+    @SuppressWarnings("deprecation")
+    private float animatorDurationScale() {
+        ContentResolver resolver = context.getContentResolver();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return Settings.Global.getFloat(resolver, Settings.Global.ANIMATOR_DURATION_SCALE, 1);
+        }
+        return Settings.System.getFloat(resolver, Settings.System.ANIMATOR_DURATION_SCALE, 1);
+    }
+
     private boolean hasNavigationBar() {
         boolean hasBackKey = KeyCharacterMap.deviceHasKey(KeyEvent.KEYCODE_BACK);
         boolean hasHomeKey = KeyCharacterMap.deviceHasKey(KeyEvent.KEYCODE_HOME);
@@ -514,17 +712,39 @@ public class PlayerWidget {
     private class PlayPauseButtonCallback extends TouchManager.SimpleCallback {
 
         private static final long REMOVE_BTN_ANIM_DURATION = 200;
-        private final ValueAnimator.AnimatorUpdateListener animatorUpdateListener;
+        private final AnimationChannel showRemoveBtnAnimator;
+        private final AnimationChannel hideRemoveBtnAnimator;
         private boolean readyToRemove;
 
-        PlayPauseButtonCallback() {
-            animatorUpdateListener = animation -> {
+        PlayPauseButtonCallback(@NonNull Configuration configuration) {
+            AnimationChannel.Listener listener = channel -> {
                 if (!removeWidgetShown) {
                     return;
                 }
-                animatedRemBtnYPos = (int)((float) animation.getAnimatedValue());
+                animatedRemBtnYPos = (int) channel.value();
                 updateRemoveBtnPosition();
             };
+            showRemoveBtnAnimator = new AnimationChannel(configuration.animationClock())
+                    .stats(FrameStats.ANIMATION_REMOVE_TARGET)
+                    .duration(REMOVE_BTN_ANIM_DURATION)
+                    .interpolator(configuration.accDecInterpolator())
+                    .listener(listener);
+            hideRemoveBtnAnimator = new AnimationChannel(configuration.animationClock())
+                    .stats(FrameStats.ANIMATION_REMOVE_TARGET)
+                    .duration(REMOVE_BTN_ANIM_DURATION)
+                    .interpolator(configuration.accDecInterpolator())
+                    .listener(listener)
+                    .onEndListener((channel, canceled) -> {
+                        removeWidgetShown = false;
+                        if (!shown) {
+                            try {
+                                layoutBatcher.cancel(removeWidgetView);
+                                windowManager.removeView(removeWidgetView);
+                            } catch (IllegalArgumentException e) {
+                                // view not attached to window
+                            }
+                        }
+                    });
         }
 
         @Override
@@ -541,11 +761,9 @@ public class PlayerWidget {
             released = false;
             handler.postDelayed(() -> {
                 if (!released) {
+                    hideRemoveBtnAnimator.cancel();
                     removeWidgetShown = true;
-                    ValueAnimator animator = ValueAnimator.ofFloat(hiddenRemWidPos.y, visibleRemWidPos.y);
-                    animator.setDuration(REMOVE_BTN_ANIM_DURATION);
-                    animator.addUpdateListener(animatorUpdateListener);
-                    animator.start();
+                    showRemoveBtnAnimator.values(hiddenRemWidPos.y, visibleRemWidPos.y).start();
                 }
             }, Configuration.LONG_CLICK_THRESHOLD);
             playPauseButton.onTouchDown();
@@ -589,11 +807,7 @@ public class PlayerWidget {
                         visibleRemWidPos.x, animatedRemBtnYPos - radius * distance,
                         hiddenRemWidPos.x, animatedRemBtnYPos, (float) rotationDegrees);
 
-                try {
-                    windowManager.updateViewLayout(removeWidgetView, removeBtnParams);
-                } catch (IllegalArgumentException e) {
-                    // view not attached to window
-                }
+                layoutBatcher.move(removeWidgetView, removeBtnParams);
             }
         }
 
@@ -603,24 +817,8 @@ public class PlayerWidget {
             playPauseButton.onTouchUp();
             released = true;
             if (removeWidgetShown) {
-                ValueAnimator animator = ValueAnimator.ofFloat(visibleRemWidPos.y, hiddenRemWidPos.y);
-                animator.setDuration(REMOVE_BTN_ANIM_DURATION);
-                animator.addUpdateListener(animatorUpdateListener);
-                animator.addListener(new AnimatorListenerAdapter() {
-
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        removeWidgetShown = false;
-                        if (!shown) {
-                            try {
-                                windowManager.removeView(removeWidgetView);
-                            } catch (IllegalArgumentException e) {
-                                // view not attached to window
-                            }
-                        }
-                    }
-                });
-                animator.start();
+                showRemoveBtnAnimator.cancel();
+                hideRemoveBtnAnimator.values(visibleRemWidPos.y, hiddenRemWidPos.y).start();
             }
             if (isReadyToRemove()) {
                 hideInternal(false);
@@ -691,4 +889,82 @@ public class PlayerWidget {
         }
     }
 
+    /**
+     * Barrier of parallel expand phases: progress fade-out, snap to bounds and window preparation.
+     */
+    private final class ExpandSequence {
+
+        private static final int PHASES_COUNT = 3;
+
+        private int generation;
+        private int pending;
+        private int expandDirection;
+
+        void start() {
+            generation++;
+            pending = PHASES_COUNT;
+            int current = generation;
+            if (playPauseButton.enableProgressChanges(false)) {
+                long delay = (long) (PlayPauseButton.PROGRESS_CHANGES_DURATION * animationClock.durationScale());
+                playPauseButton.postDelayed(() -> arrive(current), delay);
+            } else {
+                arrive(current);
+            }
+            snap(current);
+        }
+
+        private void snap(int current) {
+            if (current != generation) {
+                return;
+            }
+            if (playPauseButtonManager.isAnimatingToBounds()) {
+                // previous snap must finish first, its target is not ours
+                playPauseButton.postOnAnimation(() -> snap(current));
+                return;
+            }
+            WindowManager.LayoutParams params = (WindowManager.LayoutParams) playPauseButton.getLayoutParams();
+            if (params.x + widgetHeight > screenSize.x / 2) {
+                expandDirection = ExpandCollapseWidget.DIRECTION_LEFT;
+            } else {
+                expandDirection = ExpandCollapseWidget.DIRECTION_RIGHT;
+            }
+            playPauseButtonManager.animateToBounds(ppbToExpBoundsChecker, () -> {
+                expandTimings.onSnapped(System.nanoTime());
+                arrive(current);
+            });
+            if (current != generation || !shown) {
+                return;
+            }
+            int x = playPauseButtonManager.boundsTargetX();
+            int y = playPauseButtonManager.boundsTargetY();
+            if (expandDirection == ExpandCollapseWidget.DIRECTION_LEFT) {
+                x -= widgetWidth - widgetHeight * 1.5f;
+            } else {
+                x += widgetHeight / 2f;
+            }
+            prepareExpanded(x, y);
+            arrive(current);
+        }
+
+        private void arrive(int current) {
+            if (current != generation || --pending > 0) {
+                return;
+            }
+            if (!shown) {
+                return;
+            }
+            showExpanded();
+            if (renderMode == Configuration.RENDER_MODE_SOFTWARE) {
+                playPauseButton.setLayerType(View.LAYER_TYPE_NONE, null);
+            }
+
+            expandCollapseWidget.setExpandListener(percent -> playPauseButton.setAlpha(1f - percent));
+            expandCollapseWidget.expand(expandDirection);
+        }
+
+        void cancel() {
+            generation++;
+        }
+    }
+
 }
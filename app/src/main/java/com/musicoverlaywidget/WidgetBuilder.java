@@ -4,6 +4,9 @@ import android.content.Context;
 import android.graphics.drawable.Drawable;
 import android.support.annotation.ColorInt;
 
+import com.musicoverlaywidget.managers.TouchPredictor;
+import com.musicoverlaywidget.utils.ColorChanger;
+
 import lombok.Getter;
 import lombok.ToString;
 
@@ -71,6 +74,22 @@ public class WidgetBuilder {
     private boolean edgeOffsetXExpandedSet;
     private boolean edgeOffsetYExpandedSet;
 
+    private int renderMode;
+    private boolean renderModeSet;
+
+    private int buttonBubblesCount;
+    private int expandedBubblesCount;
+    private boolean buttonBubblesCountSet;
+    private boolean expandedBubblesCountSet;
+
+    private int colorInterpolation;
+    private boolean colorInterpolationSet;
+
+    private boolean keepExpandedAttached;
+
+    private int touchPredictionMillis;
+    private boolean touchPredictionMillisSet;
+
 //    public WidgetBuilder(@NonNull Context context) {
 //        this.context = context;
 //    }
@@ -103,6 +122,25 @@ public class WidgetBuilder {
         if (progressStrokeWidthSet) {
             checkOrThrow(progressStrokeWidth, "Progress stroke width");
         }
+        if (buttonBubblesCountSet && buttonBubblesCount <= 0) {
+            throw new IllegalArgumentException("Button bubbles count must be greater zero.");
+        }
+        if (expandedBubblesCountSet && expandedBubblesCount <= 0) {
+            throw new IllegalArgumentException("Expanded bubbles count must be greater zero.");
+        }
+        if (colorInterpolationSet && colorInterpolation != ColorChanger.INTERPOLATION_HSV
+                && colorInterpolation != ColorChanger.INTERPOLATION_OKLAB) {
+            throw new IllegalArgumentException("Unknown color interpolation: " + colorInterpolation);
+        }
+        if (renderModeSet && renderMode != Configuration.RENDER_MODE_SOFTWARE
+                && renderMode != Configuration.RENDER_MODE_CACHED_SHADOW) {
+            throw new IllegalArgumentException("Unknown render mode: " + renderMode);
+        }
+        if (touchPredictionMillisSet
+                && (touchPredictionMillis < 0 || touchPredictionMillis > TouchPredictor.MAX_HORIZON_MILLIS)) {
+            throw new IllegalArgumentException("Touch prediction must be in range [0, "
+                    + TouchPredictor.MAX_HORIZON_MILLIS + "] ms.");
+        }
         return new PlayerWidget(this);
     }
 
@@ -250,4 +288,70 @@ public class WidgetBuilder {
         return this;
     }
 
+    /**
+     * Set rendering mode of widget shadows.
+     * @param renderMode {@link Configuration#RENDER_MODE_SOFTWARE} (default)
+     *                   or {@link Configuration#RENDER_MODE_CACHED_SHADOW}
+     */
+    public WidgetBuilder renderMode(int renderMode) {
+        this.renderMode = renderMode;
+        renderModeSet = true;
+        return this;
+    }
+
+    public WidgetBuilder buttonBubblesCount(int buttonBubblesCount) {
+        this.buttonBubblesCount = buttonBubblesCount;
+        buttonBubblesCountSet = true;
+        return this;
+    }
+
+    public WidgetBuilder expandedBubblesCount(int expandedBubblesCount) {
+        this.expandedBubblesCount = expandedBubblesCount;
+        expandedBubblesCountSet = true;
+        return this;
+    }
+
+    /**
+     * Set interpolation used for color transitions.
+     * @param colorInterpolation {@link ColorChanger#INTERPOLATION_HSV} (default)
+     *                           or {@link ColorChanger#INTERPOLATION_OKLAB}
+     */
+    public WidgetBuilder colorInterpolation(int colorInterpolation) {
+        this.colorInterpolation = colorInterpolation;
+        colorInterpolationSet = true;
+        return this;
+    }
+
+    /**
+     * Keep expanded widget window attached while widget is collapsed. Window is parked invisible
+     * and untouchable instead of being removed, so expand only moves and reveals it.
+     * <p>
+     * Trade-off: a second overlay window with its surface stays attached all the time widget is shown,
+     * also while it's collapsed. Gain in expand latency is not measured yet, compare
+     * {@link ExpandTimings#firstFrameLatencyMillis()} from
+     * {@link com.musicoverlaywidget.controllers.PlaybackController#expandTimings()}
+     * with this option on and off on target devices before enabling it,
+     * instrumented <code>ExpandLatencyTest</code> does it.
+     * @param keepExpandedAttached true to park expanded window, false to remove it on collapse (default)
+     */
+    public WidgetBuilder keepExpandedAttached(boolean keepExpandedAttached) {
+        this.keepExpandedAttached = keepExpandedAttached;
+        return this;
+    }
+
+    /**
+     * Move widget windows to predicted pointer position while dragging. Hides latency of window moves,
+     * which otherwise trail the finger by a frame or more, at the cost of small overshoot on sharp turns.
+     * Prediction error and hidden latency are reported in
+     * {@link com.musicoverlaywidget.controllers.PlaybackController#frameStats()}.
+     * @param touchPredictionMillis how far ahead pointer position is predicted, in range
+     *                              <code>[0, {@link TouchPredictor#MAX_HORIZON_MILLIS}]</code>,
+     *                              0 to disable prediction (default)
+     */
+    public WidgetBuilder touchPredictionMillis(int touchPredictionMillis) {
+        this.touchPredictionMillis = touchPredictionMillis;
+        touchPredictionMillisSet = true;
+        return this;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,315 @@
+package com.musicoverlaywidget.controllers;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaControllerCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import com.musicoverlaywidget.Configuration;
+import com.musicoverlaywidget.ExpandTimings;
+import com.musicoverlaywidget.views.animations.FrameStats;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controller attached to a media session.
+ * <p>
+ * Session callbacks are received on a background thread and mapped into {@link PlaybackState}
+ * with one batched update each, so every session change costs a single UI thread hop.
+ * Position is extrapolated by widget itself, no polling required.
+ * Widget controls are routed to session transport controls unless handled
+ * by {@link OnControlsClickListener} set to this controller.
+ * <p>
+ * Session is the only source of state, duration and position: setters are either routed
+ * to session transport controls or ignored, nothing is written to {@link PlaybackState} directly,
+ * because the next session callback would overwrite it.
+ */
+public class MediaSessionController implements PlaybackController {
+
+    private static final int NO_TARGET = -1;
+
+    private final PlaybackState playbackState;
+    private final PlaybackController widgetController;
+    private final Object widgetInitiator;
+    private final MediaControllerCompat mediaController;
+    private final HandlerThread callbackThread;
+    private final Handler callbackHandler;
+    private final SessionCallback sessionCallback;
+    private final TransportControlsRouter controlsRouter;
+    private final OnControlsClickListener previousListener;
+
+    /**
+     * State requested by play/pause click on widget, until session reports it.
+     */
+    private final AtomicInteger widgetToggleTarget;
+
+    /**
+     * @param context context
+     * @param token session token
+     * @param playbackState widget playback state
+     * @param widgetController widget controller, used for listeners and widget counters
+     * @param previousListener controls click listener of widget controller, restored by {@link #release()}
+     * @param widgetInitiator initiator used for changes requested from widget itself
+     * @throws RemoteException if session can't be connected
+     */
+    public MediaSessionController(@NonNull Context context, @NonNull MediaSessionCompat.Token token,
+                                  @NonNull PlaybackState playbackState, @NonNull PlaybackController widgetController,
+                                  @Nullable OnControlsClickListener previousListener,
+                                  @NonNull Object widgetInitiator) throws RemoteException {
+        this.playbackState = playbackState;
+        this.widgetController = widgetController;
+        this.previousListener = previousListener;
+        this.widgetInitiator = widgetInitiator;
+        this.widgetToggleTarget = new AtomicInteger(NO_TARGET);
+        this.mediaController = new MediaControllerCompat(context, token);
+        this.callbackThread = new HandlerThread(MediaSessionController.class.getSimpleName(), Process.THREAD_PRIORITY_BACKGROUND);
+        this.callbackThread.start();
+        this.callbackHandler = new Handler(callbackThread.getLooper());
+        this.sessionCallback = new SessionCallback();
+        this.controlsRouter = new TransportControlsRouter();
+        this.widgetController.onControlsClickListener(controlsRouter);
+        this.mediaController.registerCallback(sessionCallback, callbackHandler);
+        this.callbackHandler.post(this::syncWithSession);
+    }
+
+    /**
+     * Detach from session. Controller can't be used after this call.
+     */
+    public void release() {
+        mediaController.unregisterCallback(sessionCallback);
+        callbackThread.quit();
+        widgetController.onControlsClickListener(previousListener);
+    }
+
+    private void syncWithSession() {
+        PlaybackState.Editor editor = playbackState.edit(this);
+        MediaMetadataCompat metadata = mediaController.getMetadata();
+        if (metadata != null) {
+            editor.duration((int) metadata.getLong(MediaMetadataCompat.METADATA_KEY_DURATION));
+        }
+        PlaybackStateCompat state = mediaController.getPlaybackState();
+        if (state != null) {
+            map(state, editor);
+        }
+        editor.apply();
+    }
+
+    private static int widgetState(@NonNull PlaybackStateCompat state) {
+        switch (state.getState()) {
+            case PlaybackStateCompat.STATE_PLAYING:
+            case PlaybackStateCompat.STATE_FAST_FORWARDING:
+            case PlaybackStateCompat.STATE_REWINDING: {
+                return Configuration.STATE_PLAYING;
+            }
+            case PlaybackStateCompat.STATE_NONE:
+            case PlaybackStateCompat.STATE_STOPPED:
+            case PlaybackStateCompat.STATE_ERROR: {
+                return Configuration.STATE_STOPPED;
+            }
+            default: {
+                return Configuration.STATE_PAUSED;
+            }
+        }
+    }
+
+    private void map(@NonNull PlaybackStateCompat state, @NonNull PlaybackState.Editor editor) {
+        int widgetState = widgetState(state);
+        if (widgetState == Configuration.STATE_PLAYING) {
+            editor.start();
+        } else if (widgetState == Configuration.STATE_STOPPED) {
+            editor.stop();
+        } else {
+            editor.pause();
+        }
+        long updateTime = state.getLastPositionUpdateTime();
+        if (updateTime <= 0) {
+            updateTime = SystemClock.elapsedRealtime();
+        }
+        editor.position((int) state.getPosition(), updateTime, state.getPlaybackSpeed());
+    }
+
+    @Override
+    public void start() {
+        mediaController.getTransportControls().play();
+    }
+
+    @Override
+    public void pause() {
+        mediaController.getTransportControls().pause();
+    }
+
+    @Override
+    public void stop() {
+        mediaController.getTransportControls().stop();
+    }
+
+    @Override
+    public int duration() {
+        return playbackState.duration();
+    }
+
+    /**
+     * Does nothing, duration is taken from metadata of session.
+     * @param duration ignored
+     */
+    @Override
+    public void duration(int duration) {
+    }
+
+    @Override
+    public int position() {
+        return playbackState.position();
+    }
+
+    @Override
+    public void position(int position) {
+        mediaController.getTransportControls().seekTo(position);
+    }
+
+    @Override
+    public void position(int position, long updateTime, float speed) {
+        long elapsed = Math.max(0, SystemClock.elapsedRealtime() - updateTime);
+        mediaController.getTransportControls().seekTo(position + (long) (elapsed * speed));
+    }
+
+    @Override
+    public float speed() {
+        return playbackState.speed();
+    }
+
+    /**
+     * Not supported, state, duration and position are driven by session.
+     * Use transport controls of session instead.
+     * @throws UnsupportedOperationException always
+     */
+    @NonNull
+    @Override
+    public PlaybackState.Editor edit() {
+        throw new UnsupportedOperationException("Playback state is driven by media session, use its transport controls.");
+    }
+
+    @Override
+    public void onControlsClickListener(@Nullable OnControlsClickListener onControlsClickListener) {
+        controlsRouter.inner = onControlsClickListener;
+    }
+
+    @Override
+    public void onWidgetStateChangedListener(@Nullable OnWidgetStateChangedListener onWidgetStateChangedListener) {
+        widgetController.onWidgetStateChangedListener(onWidgetStateChangedListener);
+    }
+
+    @NonNull
+    @Override
+    public ExpandTimings expandTimings() {
+        return widgetController.expandTimings();
+    }
+
+    @NonNull
+    @Override
+    public FrameStats.Snapshot frameStats() {
+        return widgetController.frameStats();
+    }
+
+    @Override
+    public void resetFrameStats() {
+        widgetController.resetFrameStats();
+    }
+
+    @Override
+    public long windowLayoutUpdates() {
+        return widgetController.windowLayoutUpdates();
+    }
+
+    @Override
+    public long windowLayoutUpdatesAvoided() {
+        return widgetController.windowLayoutUpdatesAvoided();
+    }
+
+    private final class SessionCallback extends MediaControllerCompat.Callback {
+
+        @Override
+        public void onPlaybackStateChanged(PlaybackStateCompat state) {
+            if (state == null) {
+                return;
+            }
+            // state toggled from widget is already animated by widget itself,
+            // intermediate states such as buffering don't complete the toggle
+            int target = widgetToggleTarget.get();
+            Object initiator = MediaSessionController.this;
+            if (target == widgetState(state) && widgetToggleTarget.compareAndSet(target, NO_TARGET)) {
+                initiator = widgetInitiator;
+            }
+            PlaybackState.Editor editor = playbackState.edit(initiator);
+            map(state, editor);
+            editor.apply();
+        }
+
+        @Override
+        public void onMetadataChanged(MediaMetadataCompat metadata) {
+            if (metadata == null) {
+                return;
+            }
+            playbackState.edit(MediaSessionController.this)
+                    .duration((int) metadata.getLong(MediaMetadataCompat.METADATA_KEY_DURATION))
+                    .apply();
+        }
+
+        @Override
+        public void onSessionDestroyed() {
+            playbackState.edit(MediaSessionController.this)
+                    .stop()
+                    .apply();
+        }
+    }
+
+    private final class TransportControlsRouter implements OnControlsClickListener {
+
+        private OnControlsClickListener inner;
+
+        @Override
+        public boolean onPlaylistClicked() {
+            return inner != null && inner.onPlaylistClicked();
+        }
+
+        @Override
+        public void onPreviousClicked() {
+            if (inner != null) {
+                inner.onPreviousClicked();
+            } else {
+                mediaController.getTransportControls().skipToPrevious();
+            }
+        }
+
+        @Override
+        public boolean onPlayPauseClicked() {
+            if (inner != null && inner.onPlayPauseClicked()) {
+                return true;
+            }
+            if (playbackState.state() == Configuration.STATE_PLAYING) {
+                widgetToggleTarget.set(Configuration.STATE_PAUSED);
+                mediaController.getTransportControls().pause();
+            } else {
+                widgetToggleTarget.set(Configuration.STATE_PLAYING);
+                mediaController.getTransportControls().play();
+            }
+            return true;
+        }
+
+        @Override
+        public void onNextClicked() {
+            if (inner != null) {
+                inner.onNextClicked();
+            } else {
+                mediaController.getTransportControls().skipToNext();
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.musicoverlaywidget.controllers;
+
+import android.support.annotation.NonNull;
+
+import com.musicoverlaywidget.ExpandTimings;
+import com.musicoverlaywidget.views.animations.FrameStats;
+
+/**
+ * {@link Controller} with position anchor, batched updates and widget performance counters.
+ * <p>
+ * Kept apart from {@link Controller}, so existing implementations of it stay valid.
+ */
+public interface PlaybackController extends Controller {
+
+    /**
+     * Set position anchor. Widget extrapolates position from it while playing,
+     * so it's enough to call this on seek, pause, speed or track change.
+     * @param position position at <code>updateTime</code>
+     * @param updateTime time of position update in {@link android.os.SystemClock#elapsedRealtime()} base
+     * @param speed playback speed, <code>1</code> is normal playback
+     */
+    void position(int position, long updateTime, float speed);
+
+    float speed();
+
+    /**
+     * Start batched update of state, duration and position, e.g. on track change.
+     * Changes take effect together on {@link PlaybackState.Editor#apply()}.
+     */
+    @NonNull
+    PlaybackState.Editor edit();
+
+    /**
+     * @return copy of timings of last expand
+     */
+    @NonNull
+    ExpandTimings expandTimings();
+
+    /**
+     * @return copy of frame timing statistics of widget animations and drag latency
+     */
+    @NonNull
+    FrameStats.Snapshot frameStats();
+
+    /**
+     * Clear collected frame timing statistics, e.g. after they were sent to analytics.
+     */
+    void resetFrameStats();
+
+    /**
+     * @return number of window moves sent to window manager
+     */
+    long windowLayoutUpdates();
+
+    /**
+     * @return number of window moves that were coalesced within a frame or skipped as unchanged
+     */
+    long windowLayoutUpdatesAvoided();
+
+}
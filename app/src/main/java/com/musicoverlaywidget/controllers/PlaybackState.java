@@ -1,86 +1,407 @@
 package com.musicoverlaywidget.controllers;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.view.Choreographer;
 
 import com.musicoverlaywidget.Configuration;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Helper class for managing playback state.
+ * <p>
+ * State, position and duration are published together as one immutable {@link Snapshot},
+ * so readers on any thread never observe a torn update and writers never block.
+ * Position changes reach listeners through {@link ProgressDispatcher}, at most once per frame.
+ * <p>
+ * Position is kept as an anchor (position, update time, speed), like platform
+ * <code>PlaybackState</code>, and extrapolated while playing, so host only needs to push
+ * position on seek, pause, speed or track change.
+ * Must be created on the UI thread.
  */
 public class PlaybackState {
 
-	private int state = Configuration.STATE_STOPPED;
+	private static final PlaybackStateListener[] NO_LISTENERS = new PlaybackStateListener[0];
 
-	private int position;
-	private int duration;
+	/**
+	 * Maximum difference between extrapolated and new anchor position which is smoothed out
+	 * instead of jumping. Larger differences are treated as seek.
+	 */
+	private static final int DRIFT_TOLERANCE = 1000;
 
-	private final Set<PlaybackStateListener> stateListeners;
+	/**
+	 * Time in which drift between old and new anchor is corrected.
+	 */
+	private static final long DRIFT_CORRECTION_DURATION = 500;
+
+	private final AtomicReference<Snapshot> snapshot;
+	private final AtomicReference<PlaybackStateListener[]> stateListeners;
+	private final ProgressDispatcher progressDispatcher;
+	private final Looper looper;
+	private final Handler handler;
 
 	public PlaybackState() {
-		stateListeners = new HashSet<>();
+		snapshot = new AtomicReference<>(new Snapshot(Configuration.STATE_STOPPED, 0, 0, 1f, 0, 0));
+		stateListeners = new AtomicReference<>(NO_LISTENERS);
+		progressDispatcher = new ProgressDispatcher(this, Choreographer.getInstance());
+		looper = Looper.myLooper();
+		handler = new Handler(looper);
 	}
 
 	public boolean addPlaybackStateListener(@NonNull PlaybackStateListener playbackStateListener) {
-		return stateListeners.add(playbackStateListener);
+		PlaybackStateListener[] current, updated;
+		do {
+			current = stateListeners.get();
+			if (indexOf(current, playbackStateListener) != -1) {
+				return false;
+			}
+			updated = new PlaybackStateListener[current.length + 1];
+			System.arraycopy(current, 0, updated, 0, current.length);
+			updated[current.length] = playbackStateListener;
+		} while (!stateListeners.compareAndSet(current, updated));
+		return true;
 	}
 
 	public boolean removePlaybackStateListener(@NonNull PlaybackStateListener playbackStateListener) {
-		return stateListeners.remove(playbackStateListener);
+		PlaybackStateListener[] current, updated;
+		do {
+			current = stateListeners.get();
+			int index = indexOf(current, playbackStateListener);
+			if (index == -1) {
+				return false;
+			}
+			if (current.length == 1) {
+				updated = NO_LISTENERS;
+			} else {
+				updated = new PlaybackStateListener[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, index);
+				System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+			}
+		} while (!stateListeners.compareAndSet(current, updated));
+		return true;
+	}
+
+	/**
+	 * Get consistent view of state, position and duration.
+	 * @return latest published snapshot
+	 */
+	@NonNull
+	public Snapshot snapshot() {
+		return snapshot.get();
+	}
+
+	@NonNull
+	public ProgressDispatcher progressDispatcher() {
+		return progressDispatcher;
 	}
 
 	public int state() {
-		return state;
+		return snapshot.get().state;
 	}
 
+	/**
+	 * @return current position extrapolated from last anchor
+	 */
 	public int position() {
-		return position;
+		return snapshot.get().positionAt(SystemClock.elapsedRealtime());
+	}
+
+	public float speed() {
+		return snapshot.get().speed;
 	}
 
 	public int duration() {
-		return duration;
+		return snapshot.get().duration;
 	}
 
 	public PlaybackState position(int position) {
-		this.position = position;
-		notifyProgressChanged(position);
+		return position(position, SystemClock.elapsedRealtime(), snapshot.get().speed);
+	}
+
+	/**
+	 * Set new position anchor.
+	 * @param position position at <code>updateTime</code>
+	 * @param updateTime time of position update in {@link SystemClock#elapsedRealtime()} base
+	 * @param speed playback speed, <code>1</code> is normal playback
+	 */
+	public PlaybackState position(int position, long updateTime, float speed) {
+		Snapshot current, updated;
+		do {
+			current = snapshot.get();
+			int drift = 0;
+			if (current.state == Configuration.STATE_PLAYING) {
+				drift = current.positionAt(updateTime) - position;
+				if (Math.abs(drift) > DRIFT_TOLERANCE) {
+					drift = 0;
+				}
+			}
+			updated = new Snapshot(current.state, position, updateTime, speed, current.duration, drift);
+		} while (!snapshot.compareAndSet(current, updated));
+		progressDispatcher.dispatch();
 		return this;
 	}
 
 	public PlaybackState duration(int duration) {
-		this.duration = duration;
+		Snapshot current, updated;
+		do {
+			current = snapshot.get();
+			updated = new Snapshot(current.state, current.position, current.updateTime,
+					current.speed, duration, current.drift);
+		} while (!snapshot.compareAndSet(current, updated));
 		return this;
 	}
 
+	/**
+	 * Start batched update. Changes are applied together by {@link Editor#apply()}
+	 * and listeners receive exactly one
+	 * {@link PlaybackStateListener#onPlaybackChanged(Snapshot, Snapshot, Object)} call,
+	 * without separate {@link PlaybackStateListener#onProgressChanged(int, int, float)} for it.
+	 * @param initiator initiator of changes
+	 * @return new editor
+	 */
+	@NonNull
+	public Editor edit(Object initiator) {
+		return new Editor(initiator);
+	}
+
 	public void start(Object initiator) {
-		state(Configuration.STATE_PLAYING, initiator);
+		state(Configuration.STATE_PLAYING, false, initiator);
 	}
 
 	public void pause(Object initiator) {
-		state(Configuration.STATE_PAUSED, initiator);
+		state(Configuration.STATE_PAUSED, false, initiator);
 	}
 
+	/**
+	 * Stop playback and rewind to start. State and position are published as one snapshot.
+	 * @param initiator initiator of changes
+	 */
 	public void stop(Object initiator) {
-		state(Configuration.STATE_STOPPED, initiator);
-		position(0);
+		state(Configuration.STATE_STOPPED, true, initiator);
+	}
+
+	/**
+	 * Change state in one CAS.
+	 * @param state new state
+	 * @param rewind true to move anchor to start, false to re-anchor at current position
+	 * @param initiator initiator of changes
+	 */
+	private void state(int state, boolean rewind, Object initiator) {
+		Snapshot current, updated;
+		do {
+			current = snapshot.get();
+			if (current.state == state && (!rewind || current.position == 0))
+				return;
+			// re-anchor at current position, so clock continues (or freezes) from where it is now
+			long now = SystemClock.elapsedRealtime();
+			int position = rewind ? 0 : current.positionAt(now);
+			updated = new Snapshot(state, position, now, current.speed, current.duration, 0);
+		} while (!snapshot.compareAndSet(current, updated));
+		if (current.state != state) {
+			PlaybackStateListener[] listeners = stateListeners.get();
+			for (int i = 0; i < listeners.length; i++) {
+				listeners[i].onStateChanged(current.state, state, initiator);
+			}
+		}
+		if (updated.isAdvancing()) {
+			progressDispatcher.schedule();
+		} else if (rewind) {
+			progressDispatcher.dispatch();
+		}
+	}
+
+	/**
+	 * Notify listeners about position at current time.
+	 * @return true if position keeps advancing and should be delivered again on next frame
+	 */
+	boolean notifyProgressChanged(@NonNull Snapshot snapshot) {
+		int duration = snapshot.duration;
+		int position = snapshot.positionAt(SystemClock.elapsedRealtime());
+		// duration is unknown until host sets it
+		float progress = duration > 0 ? 1f * position / duration : 0;
+		PlaybackStateListener[] listeners = stateListeners.get();
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].onProgressChanged(position, duration, progress);
+		}
+		return listeners.length > 0 && snapshot.isAdvancing() && position < duration;
 	}
 
-	private void state(int state, Object initiator) {
-		if (this.state == state)
-			return;
-		int oldState = this.state;
-		this.state = state;
-		for (PlaybackStateListener listener : stateListeners) {
-			listener.onStateChanged(oldState, state, initiator);
+	private void notifyPlaybackChanged(@NonNull Snapshot oldSnapshot, @NonNull Snapshot newSnapshot, Object initiator) {
+		PlaybackStateListener[] listeners = stateListeners.get();
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].onPlaybackChanged(oldSnapshot, newSnapshot, initiator);
+		}
+		progressDispatcher.onPlaybackChanged(newSnapshot);
+	}
+
+	private static int indexOf(PlaybackStateListener[] listeners, PlaybackStateListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i].equals(listener)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Immutable playback state published as a whole.
+	 */
+	public static final class Snapshot {
+
+		private final int state;
+		private final int position;
+		private final long updateTime;
+		private final float speed;
+		private final int duration;
+		private final int drift;
+
+		Snapshot(int state, int position, long updateTime, float speed, int duration, int drift) {
+			this.state = state;
+			this.position = position;
+			this.updateTime = updateTime;
+			this.speed = speed;
+			this.duration = duration;
+			this.drift = drift;
+		}
+
+		public int state() {
+			return state;
+		}
+
+		/**
+		 * @return anchor position
+		 */
+		public int position() {
+			return position;
+		}
+
+		/**
+		 * @return time of anchor in {@link SystemClock#elapsedRealtime()} base
+		 */
+		public long updateTime() {
+			return updateTime;
+		}
+
+		public float speed() {
+			return speed;
+		}
+
+		public int duration() {
+			return duration;
+		}
+
+		/**
+		 * Extrapolate position from anchor.
+		 * @param time time in {@link SystemClock#elapsedRealtime()} base
+		 * @return position at given time
+		 */
+		public int positionAt(long time) {
+			if (!isAdvancing()) {
+				return position;
+			}
+			long elapsed = Math.max(0, time - updateTime);
+			long result = position + (long) (elapsed * speed);
+			if (drift != 0 && elapsed < DRIFT_CORRECTION_DURATION) {
+				result += (long) (drift * (1f - 1f * elapsed / DRIFT_CORRECTION_DURATION));
+			}
+			if (duration > 0 && result > duration) {
+				return duration;
+			}
+			return (int) Math.max(0, result);
+		}
+
+		boolean isAdvancing() {
+			return state == Configuration.STATE_PLAYING && speed != 0;
 		}
 	}
 
-	private void notifyProgressChanged(int position) {
-		float progress = 1f * position / duration;
-		for (PlaybackStateListener listener : stateListeners) {
-			listener.onProgressChanged(position, duration, progress);
+	/**
+	 * Batch of changes applied atomically.
+	 */
+	public final class Editor {
+
+		private static final int UNCHANGED = -1;
+
+		private final Object initiator;
+		private int state = UNCHANGED;
+		private int duration = UNCHANGED;
+		private int position = UNCHANGED;
+		private long updateTime;
+		private float speed;
+		private boolean speedSet;
+
+		private Editor(Object initiator) {
+			this.initiator = initiator;
+		}
+
+		public Editor start() {
+			state = Configuration.STATE_PLAYING;
+			return this;
+		}
+
+		public Editor pause() {
+			state = Configuration.STATE_PAUSED;
+			return this;
+		}
+
+		public Editor stop() {
+			state = Configuration.STATE_STOPPED;
+			return this;
+		}
+
+		public Editor duration(int duration) {
+			this.duration = duration;
+			return this;
+		}
+
+		public Editor position(int position) {
+			this.position = position;
+			this.updateTime = SystemClock.elapsedRealtime();
+			this.speedSet = false;
+			return this;
+		}
+
+		public Editor position(int position, long updateTime, float speed) {
+			this.position = position;
+			this.updateTime = updateTime;
+			this.speed = speed;
+			this.speedSet = true;
+			return this;
+		}
+
+		/**
+		 * Publish all changes as one snapshot and notify listeners once, on UI thread.
+		 */
+		public void apply() {
+			Snapshot current, updated;
+			do {
+				current = snapshot.get();
+				updated = apply(current);
+			} while (!snapshot.compareAndSet(current, updated));
+			Snapshot oldSnapshot = current;
+			Snapshot newSnapshot = updated;
+			if (Looper.myLooper() == looper) {
+				notifyPlaybackChanged(oldSnapshot, newSnapshot, initiator);
+			} else {
+				handler.post(() -> notifyPlaybackChanged(oldSnapshot, newSnapshot, initiator));
+			}
+		}
+
+		private Snapshot apply(Snapshot current) {
+			long now = SystemClock.elapsedRealtime();
+			int newState = state == UNCHANGED ? current.state : state;
+			int newDuration = duration == UNCHANGED ? current.duration : duration;
+			float newSpeed = speedSet ? speed : current.speed;
+			if (position != UNCHANGED) {
+				return new Snapshot(newState, position, updateTime, newSpeed, newDuration, 0);
+			}
+			if (newState == Configuration.STATE_STOPPED) {
+				return new Snapshot(newState, 0, now, newSpeed, newDuration, 0);
+			}
+			return new Snapshot(newState, current.positionAt(now), now, newSpeed, newDuration, 0);
 		}
 	}
 
@@ -89,5 +410,44 @@ public class PlaybackState {
 		void onStateChanged(int oldState, int newState, Object initiator);
 
 		void onProgressChanged(int position, int duration, float percentage);
+
+		/**
+		 * Called once for a batch of changes made through {@link Editor}, instead of
+		 * {@link #onStateChanged(int, int, Object)} and {@link #onProgressChanged(int, int, float)}.
+		 * Progress of new snapshot must be taken from it, next progress delivery comes after it
+		 * as usual. Extend {@link SimplePlaybackStateListener} to get separate calls instead.
+		 * @param oldSnapshot state before changes
+		 * @param newSnapshot state after changes
+		 * @param initiator initiator of changes
+		 */
+		void onPlaybackChanged(@NonNull Snapshot oldSnapshot, @NonNull Snapshot newSnapshot, Object initiator);
+	}
+
+	/**
+	 * Listener with empty methods. Batched update is passed to
+	 * {@link #onStateChanged(int, int, Object)}, if state changed, and
+	 * {@link #onProgressChanged(int, int, float)}, so subclass may override only those.
+	 */
+	public static class SimplePlaybackStateListener implements PlaybackStateListener {
+
+		@Override
+		public void onStateChanged(int oldState, int newState, Object initiator) {
+
+		}
+
+		@Override
+		public void onProgressChanged(int position, int duration, float percentage) {
+
+		}
+
+		@Override
+		public void onPlaybackChanged(@NonNull Snapshot oldSnapshot, @NonNull Snapshot newSnapshot, Object initiator) {
+			if (oldSnapshot.state != newSnapshot.state) {
+				onStateChanged(oldSnapshot.state, newSnapshot.state, initiator);
+			}
+			int duration = newSnapshot.duration;
+			int position = newSnapshot.positionAt(SystemClock.elapsedRealtime());
+			onProgressChanged(position, duration, duration > 0 ? 1f * position / duration : 0);
+		}
 	}
 }
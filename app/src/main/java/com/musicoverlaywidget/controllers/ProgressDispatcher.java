@@ -0,0 +1,178 @@
+package com.musicoverlaywidget.controllers;
+
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses all position updates posted within one display frame into a single delivery.
+ * <p>
+ * Position may be pushed from any thread; listeners are notified on the thread of the
+ * {@link Choreographer} passed in, once per frame at most, with the latest value.
+ * While playback is advancing, extrapolated position is delivered without any pushes from host,
+ * once per {@link #progressStep(float)} of track, and on every frame only while there is
+ * a frame rate consumer, see {@link #addFrameRateConsumer()}.
+ */
+public class ProgressDispatcher implements Choreographer.FrameCallback {
+
+	/**
+	 * Default progress step, one degree of progress arc.
+	 */
+	private static final float DEFAULT_PROGRESS_STEP = 1f / 360;
+
+	private static final int IDLE = 0;
+	private static final int DELAYED = 1;
+	private static final int PENDING = 2;
+
+	private final PlaybackState playbackState;
+	private final Choreographer choreographer;
+	private final AtomicInteger scheduled;
+	private final AtomicBoolean pushPending;
+	private final AtomicBoolean skipNext;
+	private final AtomicInteger frameRateConsumers;
+	private final AtomicLong requestedCount;
+	private final AtomicLong deliveredCount;
+	private final AtomicLong coalescedCount;
+	private volatile float progressStep;
+
+	ProgressDispatcher(@NonNull PlaybackState playbackState, @NonNull Choreographer choreographer) {
+		this.playbackState = playbackState;
+		this.choreographer = choreographer;
+		this.scheduled = new AtomicInteger(IDLE);
+		this.pushPending = new AtomicBoolean();
+		this.skipNext = new AtomicBoolean();
+		this.frameRateConsumers = new AtomicInteger();
+		this.requestedCount = new AtomicLong();
+		this.deliveredCount = new AtomicLong();
+		this.coalescedCount = new AtomicLong();
+		this.progressStep = DEFAULT_PROGRESS_STEP;
+	}
+
+	/**
+	 * Request delivery of the latest position on the next frame.
+	 */
+	void dispatch() {
+		requestedCount.incrementAndGet();
+		if (pushPending.getAndSet(true)) {
+			coalescedCount.incrementAndGet();
+		}
+		schedule();
+	}
+
+	/**
+	 * Schedule delivery on the next frame. Pending delayed delivery is moved to the next frame.
+	 * @return false if delivery was already scheduled on the next frame
+	 */
+	boolean schedule() {
+		int current;
+		do {
+			current = scheduled.get();
+			if (current == PENDING) {
+				return false;
+			}
+		} while (!scheduled.compareAndSet(current, PENDING));
+		if (current == DELAYED) {
+			choreographer.removeFrameCallback(this);
+		}
+		choreographer.postFrameCallback(this);
+		return true;
+	}
+
+	private void scheduleDelayed(long delayMillis) {
+		if (scheduled.compareAndSet(IDLE, DELAYED)) {
+			choreographer.postFrameCallbackDelayed(this, delayMillis);
+		}
+	}
+
+	/**
+	 * Listeners were notified about given snapshot by batched update, which carries position too.
+	 * Delivery on the next frame is skipped unless position is pushed in between,
+	 * extrapolated deliveries continue after it.
+	 */
+	void onPlaybackChanged(@NonNull PlaybackState.Snapshot snapshot) {
+		skipNext.set(true);
+		if (snapshot.isAdvancing()) {
+			schedule();
+		}
+	}
+
+	@Override
+	public void doFrame(long frameTimeNanos) {
+		scheduled.set(IDLE);
+		boolean pushed = pushPending.getAndSet(false);
+		PlaybackState.Snapshot snapshot = playbackState.snapshot();
+		boolean advancing;
+		if (skipNext.getAndSet(false) && !pushed) {
+			advancing = snapshot.isAdvancing();
+		} else {
+			deliveredCount.incrementAndGet();
+			advancing = playbackState.notifyProgressChanged(snapshot);
+		}
+		if (!advancing) {
+			return;
+		}
+		// playback clock is running, keep ticking
+		if (frameRateConsumers.get() > 0) {
+			schedule();
+		} else {
+			scheduleDelayed((long) (snapshot.duration() * progressStep / Math.abs(snapshot.speed())));
+		}
+	}
+
+	/**
+	 * Register consumer which needs extrapolated position on every frame, e.g. running
+	 * animation of progress arc. Keep it registered only for the time of such animation,
+	 * every frame of playback wakes up the thread of {@link Choreographer}.
+	 * Call on the thread of {@link Choreographer}.
+	 */
+	public void addFrameRateConsumer() {
+		frameRateConsumers.incrementAndGet();
+		// switch pending delayed delivery to frame rate
+		schedule();
+	}
+
+	/**
+	 * Unregister consumer added by {@link #addFrameRateConsumer()}, e.g. when animation ends.
+	 * Delivery falls back to one per {@link #progressStep(float)} after the next frame.
+	 */
+	public void removeFrameRateConsumer() {
+		frameRateConsumers.decrementAndGet();
+	}
+
+	/**
+	 * Request extrapolated position once per given step while there is no frame rate consumer.
+	 * The smallest requested step is used.
+	 * @param step fraction of track, e.g. one pixel of progress arc
+	 */
+	public void progressStep(float step) {
+		if (step > 0 && step < progressStep) {
+			progressStep = step;
+		}
+	}
+
+	/**
+	 * @return number of position updates pushed by host
+	 */
+	public long requestedCount() {
+		return requestedCount.get();
+	}
+
+	/**
+	 * @return number of deliveries made to listeners, including extrapolated ones
+	 */
+	public long deliveredCount() {
+		return deliveredCount.get();
+	}
+
+	/**
+	 * @return number of pushed position updates merged into a later delivery together with
+	 * another pushed update. Extrapolated deliveries are not counted, so value is the same
+	 * as without extrapolation.
+	 */
+	public long coalescedCount() {
+		return coalescedCount.get();
+	}
+}
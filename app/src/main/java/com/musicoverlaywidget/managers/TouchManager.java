@@ -9,8 +9,9 @@ import android.view.View;
 import android.view.WindowManager;
 
 import com.musicoverlaywidget.R;
-import com.musicoverlaywidget.utils.DrawableUtils;
+import com.musicoverlaywidget.views.animations.AnimationClock;
 import com.musicoverlaywidget.views.animations.FlingGestureAnimator;
+import com.musicoverlaywidget.views.animations.FrameStats;
 import com.musicoverlaywidget.views.animations.StickyEdgeAnimator;
 
 /**
@@ -19,32 +20,38 @@ import com.musicoverlaywidget.views.animations.StickyEdgeAnimator;
 
 public class TouchManager implements View.OnTouchListener{
 
+    private static final float MAX_PREDICTION_DP = 48;
+
     private final View view;
     private final BoundsChecker boundsChecker;
-    private final WindowManager windowManager;
+    private final AnimationClock clock;
+    private final WindowLayoutBatcher layoutBatcher;
     private final StickyEdgeAnimator stickyEdgeAnimator;
     private final FlingGestureAnimator velocityAnimator;
 
     private GestureListener gestureListener;
     private GestureDetector gestureDetector;
     private TouchCallback callback;
+    @Nullable
+    private TouchPredictor predictor;
     private int screenWidth;
     private int screenHeight;
-    private Float lastRawX, lastRawY;
     private boolean touchCanceled;
 
-    public TouchManager(@NonNull View view, @NonNull BoundsChecker boundsChecker) {
+    public TouchManager(@NonNull View view, @NonNull BoundsChecker boundsChecker, @NonNull AnimationClock clock,
+                        @NonNull WindowLayoutBatcher layoutBatcher) {
         this.gestureDetector = new GestureDetector(view.getContext(), gestureListener = new GestureListener());
         gestureDetector.setIsLongpressEnabled(true);
         this.view = view;
         this.boundsChecker = boundsChecker;
+        this.clock = clock;
         this.view.setOnTouchListener(this);
         Context context = view.getContext().getApplicationContext();
-        this.windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        this.layoutBatcher = layoutBatcher;
         this.screenWidth = context.getResources().getDisplayMetrics().widthPixels;
         this.screenHeight = context.getResources().getDisplayMetrics().heightPixels - context.getResources().getDimensionPixelSize(R.dimen.widget_status_bar_height);
-        stickyEdgeAnimator = new StickyEdgeAnimator(callback, windowManager, view, screenWidth, screenHeight);
-        velocityAnimator = new FlingGestureAnimator(callback, windowManager, view, boundsChecker, stickyEdgeAnimator, screenWidth);
+        stickyEdgeAnimator = new StickyEdgeAnimator(clock, callback, layoutBatcher, view, screenWidth, screenHeight);
+        velocityAnimator = new FlingGestureAnimator(clock, callback, layoutBatcher, view, boundsChecker, stickyEdgeAnimator, screenWidth);
     }
 
     public TouchManager screenWidth(int screenWidth) {
@@ -62,8 +69,24 @@ public class TouchManager implements View.OnTouchListener{
         return this;
     }
 
+    /**
+     * Place window at predicted pointer position while dragging, to hide latency of window moves.
+     * Prediction error and hidden latency are recorded in {@link FrameStats} of animation clock.
+     * @param horizonMillis how far ahead pointer position is predicted, 0 to disable prediction
+     */
+    public TouchManager predictionMillis(int horizonMillis) {
+        if (horizonMillis == 0) {
+            predictor = null;
+        } else {
+            float density = view.getResources().getDisplayMetrics().density;
+            predictor = new TouchPredictor(horizonMillis, MAX_PREDICTION_DP * density);
+        }
+        return this;
+    }
+
     @Override
     public boolean onTouch(View v, MotionEvent event) {
+        long startNanos = System.nanoTime();
         boolean res = (!touchCanceled || event.getAction() == MotionEvent.ACTION_UP) && gestureDetector.onTouchEvent(event);
         if (event.getAction() == MotionEvent.ACTION_DOWN) {
             touchCanceled = false;
@@ -76,6 +99,10 @@ public class TouchManager implements View.OnTouchListener{
             if (!touchCanceled) {
                 gestureListener.onMove(event);
             }
+            FrameStats stats = clock.frameStats();
+            if (stats != null) {
+                stats.onDragBatch(event.getHistorySize() + 1, System.nanoTime() - startNanos);
+            }
         } else if (event.getAction() == MotionEvent.ACTION_OUTSIDE) {
             gestureListener.onTouchOutsideEvent(event);
             touchCanceled = false;
@@ -88,14 +115,24 @@ public class TouchManager implements View.OnTouchListener{
     private class GestureListener extends GestureDetector.SimpleOnGestureListener {
 
         private int prevX, prevY;
-        private float velX, velY;
-        private long lastEventTime;
+        private float downRawX, downRawY;
+        private float lastRawX, lastRawY;
+        private boolean scrolling;
+        private final VelocityEstimator velocity = new VelocityEstimator();
 
         @Override
         public boolean onDown(MotionEvent e) {
             WindowManager.LayoutParams params = (WindowManager.LayoutParams) view.getLayoutParams();
             prevX = params.x;
             prevY = params.y;
+            downRawX = lastRawX = e.getRawX();
+            downRawY = lastRawY = e.getRawY();
+            scrolling = false;
+            velocity.reset();
+            if (predictor != null) {
+                predictor.reset();
+            }
+            velocity.add(e.getRawX(), e.getRawY(), e.getEventTime());
             boolean result = !stickyEdgeAnimator.isAnimating();
             if (result) {
                 if (callback != null) {
@@ -115,52 +152,84 @@ public class TouchManager implements View.OnTouchListener{
 
         @Override
         public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-            float diffX = e2.getRawX() - e1.getRawX();
-            float diffY = e2.getRawY() - e1.getRawY();
-            float l = prevX + diffX;
-            float t = prevY + diffY;
-            WindowManager.LayoutParams params = (WindowManager.LayoutParams) view.getLayoutParams();
-            params.x = (int) l;
-            params.y = (int) t;
-            try {
-                windowManager.updateViewLayout(view, params);
-            } catch (IllegalArgumentException e) {
-                // view not attached to window
-            }
-            if (callback != null) {
-                callback.onMoved(distanceX, distanceY);
-            }
+            // window is moved by onMove() once per batch, detector only tells that drag has started
+            scrolling = true;
             return true;
         }
 
         @Override
         public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
-            velocityAnimator.animate(velX, velY);
+            if (velocity.compute(e2.getEventTime())) {
+                velocityAnimator.animate(velocity.velocityX(), velocity.velocityY());
+            } else {
+                // not enough own samples, use platform estimate
+                velocityAnimator.animate(velocityX, velocityY);
+            }
             return true;
         }
 
+        /**
+         * Handle whole batch of move event at once: all samples feed velocity estimate,
+         * window is moved and callback is notified once with net delta of the batch.
+         * Window moves are coalesced by {@link WindowLayoutBatcher} to one per frame.
+         */
         private void onMove(MotionEvent e2) {
-            if (lastRawX != null && lastRawY != null) {
-                long diff = e2.getEventTime() - lastEventTime;
-                float dt = diff == 0 ? 0 : 1000f / diff;
-                float newVelX = (e2.getRawX() - lastRawX) * dt;
-                float newVelY = (e2.getRawY() - lastRawY) * dt;
-                velX = DrawableUtils.smooth(velX, newVelX, 0.2f);
-                velY = DrawableUtils.smooth(velY, newVelY, 0.2f);
+            // historical samples share raw offset of the event, platform has no getHistoricalRawX() before API 29
+            float offsetX = e2.getRawX() - e2.getX();
+            float offsetY = e2.getRawY() - e2.getY();
+            for (int i = 0; i < e2.getHistorySize(); i++) {
+                float x = e2.getHistoricalX(i) + offsetX;
+                float y = e2.getHistoricalY(i) + offsetY;
+                long time = e2.getHistoricalEventTime(i);
+                velocity.add(x, y, time);
+                resolvePrediction(x, y, time);
+            }
+            float rawX = e2.getRawX();
+            float rawY = e2.getRawY();
+            velocity.add(rawX, rawY, e2.getEventTime());
+            resolvePrediction(rawX, rawY, e2.getEventTime());
+            if (!scrolling) {
+                return;
+            }
+            float targetX = rawX;
+            float targetY = rawY;
+            if (predictor != null) {
+                predictor.predict(rawX, rawY, e2.getEventTime(), velocity);
+                targetX = predictor.predictedX();
+                targetY = predictor.predictedY();
+            }
+            WindowManager.LayoutParams params = (WindowManager.LayoutParams) view.getLayoutParams();
+            params.x = (int) (prevX + targetX - downRawX);
+            params.y = (int) (prevY + targetY - downRawY);
+            layoutBatcher.move(view, params, e2.getEventTime());
+            float distanceX = lastRawX - rawX;
+            float distanceY = lastRawY - rawY;
+            lastRawX = rawX;
+            lastRawY = rawY;
+            if (callback != null) {
+                callback.onMoved(distanceX, distanceY);
+            }
+        }
+
+        private void resolvePrediction(float x, float y, long time) {
+            FrameStats stats = clock.frameStats();
+            if (predictor != null && predictor.resolve(x, y, time) && stats != null) {
+                stats.onPrediction(predictor.error(), predictor.gainMillis());
             }
-            lastRawX = e2.getRawX();
-            lastRawY = e2.getRawY();
-            lastEventTime = e2.getEventTime();
         }
 
         private void onUpEvent(MotionEvent e) {
+            if (predictor != null && scrolling && !velocityAnimator.isAnimating()) {
+                // no fling continues predicted motion, put window back under the pointer
+                WindowManager.LayoutParams params = (WindowManager.LayoutParams) view.getLayoutParams();
+                params.x = (int) (prevX + lastRawX - downRawX);
+                params.y = (int) (prevY + lastRawY - downRawY);
+                layoutBatcher.move(view, params, e.getEventTime());
+            }
             if (callback != null) {
                 callback.onReleased(e.getX(), e.getY());
             }
-            lastRawX = null;
-            lastRawY = null;
-            lastEventTime = 0;
-            velX = velY = 0;
+            velocity.reset();
             if (!velocityAnimator.isAnimating()) {
                 stickyEdgeAnimator.animate(boundsChecker);
             }
@@ -215,6 +284,27 @@ public class TouchManager implements View.OnTouchListener{
         stickyEdgeAnimator.animate(boundsChecker, null);
     }
 
+    /**
+     * @return true if window is being animated to bounds
+     */
+    public boolean isAnimatingToBounds() {
+        return stickyEdgeAnimator.isAnimating();
+    }
+
+    /**
+     * @return x coordinate of window at the end of last animation to bounds
+     */
+    public int boundsTargetX() {
+        return stickyEdgeAnimator.targetX();
+    }
+
+    /**
+     * @return y coordinate of window at the end of last animation to bounds
+     */
+    public int boundsTargetY() {
+        return stickyEdgeAnimator.targetY();
+    }
+
     public interface BoundsChecker {
 
         float stickyLeftSide(float screenWidth);
@@ -0,0 +1,136 @@
+package com.musicoverlaywidget.managers;
+
+/**
+ * Extrapolates pointer position to expected display time to hide window move latency.
+ * <p>
+ * Position is extrapolated with velocity and acceleration from {@link VelocityEstimator}.
+ * Prediction is limited to maximum distance and never points against current velocity.
+ * Confidence drops to zero when pointer changes direction and grows back over next batches,
+ * so overshoot on direction changes decays instead of being amplified. Each prediction is checked
+ * against first real sample at or after its target time, see {@link #resolve(float, float, long)}.
+ * Only one prediction is checked at a time.
+ */
+public class TouchPredictor {
+
+    /**
+     * Maximum prediction horizon.
+     */
+    public static final int MAX_HORIZON_MILLIS = 50;
+
+    private static final float CONFIDENCE_STEP = 0.25f;
+    private static final float MIN_SPEED = 50;
+
+    private final int horizonMillis;
+    private final float maxDistance;
+    private float confidence;
+    private float prevVelocityX, prevVelocityY;
+    private float predictedX, predictedY;
+    private boolean pending;
+    private long targetTime;
+    private float targetX, targetY;
+    private float gainMillis;
+    private float error;
+
+    /**
+     * @param horizonMillis how far ahead position is predicted, in range <code>[0, MAX_HORIZON_MILLIS]</code>
+     * @param maxDistance maximum distance between real and predicted position in pixels
+     */
+    public TouchPredictor(int horizonMillis, float maxDistance) {
+        if (horizonMillis < 0 || horizonMillis > MAX_HORIZON_MILLIS) {
+            throw new IllegalArgumentException("Prediction horizon must be in range [0, " + MAX_HORIZON_MILLIS + "] ms.");
+        }
+        this.horizonMillis = horizonMillis;
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Check pending prediction against real pointer sample.
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param timeMillis sample time in milliseconds
+     * @return true if pending prediction was resolved by this sample,
+     * see {@link #error()} and {@link #gainMillis()}
+     */
+    public boolean resolve(float x, float y, long timeMillis) {
+        if (!pending || timeMillis < targetTime) {
+            return false;
+        }
+        pending = false;
+        error = (float) Math.hypot(targetX - x, targetY - y);
+        return true;
+    }
+
+    /**
+     * Predict pointer position.
+     * @param x x coordinate of newest sample
+     * @param y y coordinate of newest sample
+     * @param timeMillis time of newest sample in milliseconds
+     * @param velocity velocity estimator fed with all samples up to newest one
+     */
+    public void predict(float x, float y, long timeMillis, VelocityEstimator velocity) {
+        predictedX = x;
+        predictedY = y;
+        velocity.compute(timeMillis);
+        float vx = velocity.velocityX();
+        float vy = velocity.velocityY();
+        if (vx * prevVelocityX + vy * prevVelocityY < 0) {
+            confidence = 0;
+        } else {
+            confidence = Math.min(1, confidence + CONFIDENCE_STEP);
+        }
+        prevVelocityX = vx;
+        prevVelocityY = vy;
+        if (Math.hypot(vx, vy) < MIN_SPEED) {
+            return;
+        }
+        float dt = horizonMillis * confidence / 1000f;
+        float dx = vx * dt + velocity.accelerationX() * dt * dt / 2;
+        float dy = vy * dt + velocity.accelerationY() * dt * dt / 2;
+        if (dx * vx + dy * vy <= 0) {
+            return;
+        }
+        float distance = (float) Math.hypot(dx, dy);
+        if (distance > maxDistance) {
+            dx *= maxDistance / distance;
+            dy *= maxDistance / distance;
+        }
+        predictedX = x + dx;
+        predictedY = y + dy;
+        // predictions made while previous one is pending are not checked
+        if (!pending) {
+            pending = true;
+            gainMillis = dt * 1000;
+            targetTime = timeMillis + Math.round(gainMillis);
+            targetX = predictedX;
+            targetY = predictedY;
+        }
+    }
+
+    public float predictedX() {
+        return predictedX;
+    }
+
+    public float predictedY() {
+        return predictedY;
+    }
+
+    /**
+     * @return distance in pixels between last resolved prediction and real position at its target time
+     */
+    public float error() {
+        return error;
+    }
+
+    /**
+     * @return how far ahead last resolved prediction was made, in milliseconds
+     */
+    public float gainMillis() {
+        return gainMillis;
+    }
+
+    public void reset() {
+        confidence = 0;
+        prevVelocityX = prevVelocityY = 0;
+        pending = false;
+    }
+}
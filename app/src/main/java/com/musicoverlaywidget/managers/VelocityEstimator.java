@@ -0,0 +1,166 @@
+package com.musicoverlaywidget.managers;
+
+/**
+ * Velocity of pointer estimated with least-squares fit of recent samples.
+ * <p>
+ * Samples are kept in fixed-capacity ring buffer, so historical points of batched move events
+ * can be added without allocation. Position along each axis is approximated with second degree
+ * polynomial over samples from last {@link #HORIZON_MILLIS} milliseconds, velocity is its
+ * derivative at the time of newest sample, acceleration is its second derivative.
+ * Samples separated by pause longer than {@link #MAX_GAP_MILLIS} milliseconds are not used,
+ * pointer is assumed to have stopped.
+ * <p>
+ * Plain Java without Android dependencies, so it can be benchmarked on JVM.
+ */
+public class VelocityEstimator {
+
+    /**
+     * Maximum number of kept samples.
+     */
+    public static final int CAPACITY = 20;
+
+    /**
+     * Maximum age of sample used for estimate, relative to newest sample.
+     */
+    public static final long HORIZON_MILLIS = 100;
+
+    /**
+     * Maximum pause between samples before pointer is considered stopped.
+     */
+    public static final long MAX_GAP_MILLIS = 40;
+
+    private final float[] xs = new float[CAPACITY];
+    private final float[] ys = new float[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    private int newest = -1;
+    private int count;
+    private float velocityX, velocityY;
+    private float accelerationX, accelerationY;
+
+    /**
+     * Add pointer sample. Sample with the same time as newest one replaces it.
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param timeMillis sample time in milliseconds, not less than time of previous sample
+     */
+    public void add(float x, float y, long timeMillis) {
+        if (count == 0 || times[newest] != timeMillis) {
+            newest = (newest + 1) % CAPACITY;
+            count = Math.min(count + 1, CAPACITY);
+        }
+        xs[newest] = x;
+        ys[newest] = y;
+        times[newest] = timeMillis;
+    }
+
+    /**
+     * Estimate velocity from collected samples.
+     * @param timeMillis current time in milliseconds, e.g. time of up event. Velocity is zero
+     *                   if pointer didn't move for {@link #MAX_GAP_MILLIS} milliseconds before it
+     * @return false if there are not enough samples for estimate, velocity is zero in that case
+     */
+    public boolean compute(long timeMillis) {
+        velocityX = velocityY = 0;
+        accelerationX = accelerationY = 0;
+        if (count == 0) {
+            return false;
+        }
+        long newestTime = times[newest];
+        if (timeMillis - newestTime > MAX_GAP_MILLIS) {
+            return true;
+        }
+        // sums of t^k, x * t^k and y * t^k, time in milliseconds relative to newest sample
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        double x0 = 0, x1 = 0, x2 = 0, y0 = 0, y1 = 0, y2 = 0;
+        float newestX = xs[newest];
+        float newestY = ys[newest];
+        long prevTime = newestTime;
+        int i = newest;
+        for (int n = 0; n < count; n++) {
+            long time = times[i];
+            if (newestTime - time > HORIZON_MILLIS || prevTime - time > MAX_GAP_MILLIS) {
+                break;
+            }
+            double t = time - newestTime;
+            double t2 = t * t;
+            double x = xs[i] - newestX;
+            double y = ys[i] - newestY;
+            s0++;
+            s1 += t;
+            s2 += t2;
+            s3 += t2 * t;
+            s4 += t2 * t2;
+            x0 += x;
+            x1 += x * t;
+            x2 += x * t2;
+            y0 += y;
+            y1 += y * t;
+            y2 += y * t2;
+            prevTime = time;
+            i = (i + CAPACITY - 1) % CAPACITY;
+        }
+        if (s0 < 2) {
+            return false;
+        }
+        if (s0 >= 3) {
+            double det = determinant(s0, s1, s2, s1, s2, s3, s2, s3, s4);
+            if (Math.abs(det) > 1e-9) {
+                velocityX = (float) (1000 * determinant(s0, x0, s2, s1, x1, s3, s2, x2, s4) / det);
+                velocityY = (float) (1000 * determinant(s0, y0, s2, s1, y1, s3, s2, y2, s4) / det);
+                accelerationX = (float) (2e6 * determinant(s0, s1, x0, s1, s2, x1, s2, s3, x2) / det);
+                accelerationY = (float) (2e6 * determinant(s0, s1, y0, s1, s2, y1, s2, s3, y2) / det);
+                return true;
+            }
+        }
+        double det = s0 * s2 - s1 * s1;
+        if (det <= 0) {
+            return false;
+        }
+        velocityX = (float) (1000 * (s0 * x1 - s1 * x0) / det);
+        velocityY = (float) (1000 * (s0 * y1 - s1 * y0) / det);
+        return true;
+    }
+
+    /**
+     * @return velocity along x axis in pixels per second, see {@link #compute(long)}
+     */
+    public float velocityX() {
+        return velocityX;
+    }
+
+    /**
+     * @return velocity along y axis in pixels per second, see {@link #compute(long)}
+     */
+    public float velocityY() {
+        return velocityY;
+    }
+
+    /**
+     * @return acceleration along x axis in pixels per second squared, see {@link #compute(long)}.
+     * Zero if there were too few samples for second degree fit
+     */
+    public float accelerationX() {
+        return accelerationX;
+    }
+
+    /**
+     * @return acceleration along y axis in pixels per second squared, see {@link #compute(long)}.
+     * Zero if there were too few samples for second degree fit
+     */
+    public float accelerationY() {
+        return accelerationY;
+    }
+
+    public void reset() {
+        newest = -1;
+        count = 0;
+        velocityX = velocityY = 0;
+        accelerationX = accelerationY = 0;
+    }
+
+    private static double determinant(double a, double b, double c,
+                                      double d, double e, double f,
+                                      double g, double h, double i) {
+        return a * (e * i - f * h) - b * (d * i - f * g) + c * (d * h - e * g);
+    }
+}
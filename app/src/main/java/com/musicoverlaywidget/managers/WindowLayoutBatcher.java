@@ -0,0 +1,197 @@
+package com.musicoverlaywidget.managers;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.WindowManager;
+
+import com.musicoverlaywidget.views.animations.FrameStats;
+
+import java.util.ArrayList;
+
+/**
+ * Coalesces window moves into at most one {@link WindowManager#updateViewLayout(View, android.view.ViewGroup.LayoutParams)}
+ * call per view per frame.
+ * <p>
+ * Callers change position in layout params right away and record view with {@link #move(View, WindowManager.LayoutParams)},
+ * pending moves are flushed from frame callback or explicitly with {@link #flush()}, e.g. at the end of
+ * {@link com.musicoverlaywidget.views.animations.AnimationClock} frame. Flush is skipped for views
+ * whose position didn't change since last flush. Batcher created without choreographer is flushed manually only.
+ * Must be used from one thread only.
+ */
+public class WindowLayoutBatcher implements Choreographer.FrameCallback {
+
+    private final WindowManager windowManager;
+    @Nullable
+    private final Choreographer choreographer;
+    private final ArrayList<Entry> entries;
+    @Nullable
+    private FrameStats frameStats;
+    private boolean scheduled;
+    private long requestsCount;
+    private long issuedCount;
+
+    /**
+     * @param windowManager window manager
+     * @param choreographer choreographer used to schedule flushes, null for manual flushing
+     */
+    public WindowLayoutBatcher(@NonNull WindowManager windowManager, @Nullable Choreographer choreographer) {
+        this.windowManager = windowManager;
+        this.choreographer = choreographer;
+        this.entries = new ArrayList<>();
+    }
+
+    /**
+     * @param frameStats statistics to record drag latency in, null to disable recording
+     */
+    public WindowLayoutBatcher frameStats(@Nullable FrameStats frameStats) {
+        this.frameStats = frameStats;
+        return this;
+    }
+
+    /**
+     * Record new window position of view. Window is moved on next flush.
+     * @param view view attached to window manager
+     * @param params layout params of view with new position
+     */
+    public void move(@NonNull View view, @NonNull WindowManager.LayoutParams params) {
+        move(view, params, 0);
+    }
+
+    /**
+     * Record new window position of view caused by input event.
+     * Latency between event and window move is recorded in {@link FrameStats}.
+     * @param view view attached to window manager
+     * @param params layout params of view with new position
+     * @param eventTime time of input event in {@link SystemClock#uptimeMillis()} base
+     */
+    public void move(@NonNull View view, @NonNull WindowManager.LayoutParams params, long eventTime) {
+        requestsCount++;
+        Entry entry = entry(view);
+        entry.params = params;
+        entry.eventTime = eventTime;
+        entry.pending = true;
+        if (!scheduled && choreographer != null) {
+            scheduled = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Drop pending move of view, e.g. before it's removed from window manager.
+     * @param view view
+     */
+    public void cancel(@NonNull View view) {
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.view == view) {
+                entry.pending = false;
+                entry.lastParams = null;
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        flush();
+    }
+
+    /**
+     * Apply all pending moves.
+     */
+    public void flush() {
+        if (scheduled && choreographer != null) {
+            scheduled = false;
+            choreographer.removeFrameCallback(this);
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (!entry.pending) {
+                continue;
+            }
+            entry.pending = false;
+            long eventTime = entry.eventTime;
+            entry.eventTime = 0;
+            WindowManager.LayoutParams params = entry.params;
+            // new params object means view was re-added, window position is unknown
+            if (entry.lastParams == params && entry.lastX == params.x && entry.lastY == params.y) {
+                continue;
+            }
+            // detached view would make window manager throw, skip it without allocating exception
+            if (entry.view.getWindowToken() == null) {
+                entry.lastParams = null;
+                continue;
+            }
+            try {
+                issuedCount++;
+                windowManager.updateViewLayout(entry.view, params);
+                entry.lastParams = params;
+                entry.lastX = params.x;
+                entry.lastY = params.y;
+                if (eventTime > 0 && frameStats != null) {
+                    frameStats.onDragLatency(SystemClock.uptimeMillis() - eventTime);
+                }
+            } catch (IllegalArgumentException e) {
+                // view not attached to window
+                entry.lastParams = null;
+            }
+        }
+    }
+
+    /**
+     * @return number of recorded moves
+     */
+    public long requestsCount() {
+        return requestsCount;
+    }
+
+    /**
+     * @return number of issued {@link WindowManager#updateViewLayout(View, android.view.ViewGroup.LayoutParams)} calls
+     */
+    public long issuedCount() {
+        return issuedCount;
+    }
+
+    /**
+     * @return number of moves that were coalesced or skipped without window manager call
+     */
+    public long avoidedCount() {
+        return requestsCount - issuedCount;
+    }
+
+    public void resetCounters() {
+        requestsCount = 0;
+        issuedCount = 0;
+    }
+
+    private Entry entry(View view) {
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.view == view) {
+                return entry;
+            }
+        }
+        Entry entry = new Entry(view);
+        entries.add(entry);
+        return entry;
+    }
+
+    private static final class Entry {
+
+        private final View view;
+        private WindowManager.LayoutParams params;
+        @Nullable
+        private WindowManager.LayoutParams lastParams;
+        private int lastX;
+        private int lastY;
+        private long eventTime;
+        private boolean pending;
+
+        Entry(View view) {
+            this.view = view;
+        }
+    }
+}
@@ -1,36 +1,227 @@
 package com.musicoverlaywidget.utils;
 
-import android.graphics.Color;
-
 /**
  * Helper class for changing color.
+ * <p>
+ * Colors between two endpoints are precomputed into ramp of {@link #RAMP_SIZE} entries,
+ * so {@link #nextColor(float)} is a table lookup. Ramps are shared between all instances
+ * in a small LRU cache, since widget uses only a few configured colors. Cache is looked up
+ * without boxing the key, so switching to cached ramp on animation frame doesn't allocate.
+ * Fractions outside of <code>[0, 1]</code>, e.g. from overshooting interpolators, are
+ * extrapolated directly. Resulting colors are always opaque.
  */
 public class ColorChanger {
 
-    private final float[] fromColorHsv;
-    private final float[] toColorHsv;
-    private final float[] resultColorHsv;
+    /**
+     * Interpolate hue, saturation and value.
+     */
+    public static final int INTERPOLATION_HSV = 0;
+    /**
+     * Interpolate in perceptual OKLab color space.
+     */
+    public static final int INTERPOLATION_OKLAB = 1;
+
+    static final int RAMP_SIZE = 256;
+    private static final int MAX_RAMPS = 16;
+
+    // most recently used first
+    private static final long[] RAMP_KEYS = new long[MAX_RAMPS];
+    private static final int[][] RAMPS = new int[MAX_RAMPS][];
+    private static int rampsCount;
+
+    private final int interpolation;
+    private final float[] from = new float[3];
+    private final float[] to = new float[3];
+    private final float[] result = new float[3];
+    private int fromColor;
+    private int toColor;
+    private int[] ramp;
 
     public ColorChanger() {
-        fromColorHsv = new float[3];
-        toColorHsv = new float[3];
-        resultColorHsv = new float[3];
+        this(INTERPOLATION_HSV);
+    }
+
+    /**
+     * @param interpolation {@link #INTERPOLATION_HSV} or {@link #INTERPOLATION_OKLAB}
+     */
+    public ColorChanger(int interpolation) {
+        if (interpolation != INTERPOLATION_HSV && interpolation != INTERPOLATION_OKLAB) {
+            throw new IllegalArgumentException("Unknown interpolation: " + interpolation);
+        }
+        this.interpolation = interpolation;
     }
 
     public ColorChanger fromColor(int fromColor) {
-        Color.colorToHSV(fromColor, fromColorHsv);
+        if (this.fromColor != fromColor) {
+            this.fromColor = fromColor;
+            ramp = null;
+        }
         return this;
     }
 
     public ColorChanger toColor(int toColor) {
-        Color.colorToHSV(toColor, toColorHsv);
+        if (this.toColor != toColor) {
+            this.toColor = toColor;
+            ramp = null;
+        }
         return this;
     }
 
     public int nextColor(float dt) {
+        if (ramp == null) {
+            ramp = ramp(fromColor, toColor, interpolation);
+        }
+        if (dt < 0 || dt > 1) {
+            return interpolate(fromColor, toColor, interpolation, dt, from, to, result);
+        }
+        return ramp[Math.round(dt * (RAMP_SIZE - 1))];
+    }
+
+    private static synchronized int[] ramp(int fromColor, int toColor, int interpolation) {
+        // colors are opaque, so alpha byte of "from" color is free for interpolation mode
+        long key = ((long) ((fromColor & 0xFFFFFF) | interpolation << 24) << 32) | (toColor & 0xFFFFFFFFL);
+        int index = 0;
+        while (index < rampsCount && RAMP_KEYS[index] != key) {
+            index++;
+        }
+        int[] ramp;
+        if (index < rampsCount) {
+            ramp = RAMPS[index];
+        } else {
+            ramp = newRamp(fromColor, toColor, interpolation);
+            // least recently used ramp is evicted when cache is full
+            index = rampsCount < MAX_RAMPS ? rampsCount++ : MAX_RAMPS - 1;
+        }
+        System.arraycopy(RAMP_KEYS, 0, RAMP_KEYS, 1, index);
+        System.arraycopy(RAMPS, 0, RAMPS, 1, index);
+        RAMP_KEYS[0] = key;
+        RAMPS[0] = ramp;
+        return ramp;
+    }
+
+    private static int[] newRamp(int fromColor, int toColor, int interpolation) {
+        float[] from = new float[3];
+        float[] to = new float[3];
+        float[] result = new float[3];
+        int[] ramp = new int[RAMP_SIZE];
+        for (int i = 0; i < RAMP_SIZE; i++) {
+            ramp[i] = interpolate(fromColor, toColor, interpolation, (float) i / (RAMP_SIZE - 1), from, to, result);
+        }
+        return ramp;
+    }
+
+    /**
+     * Interpolate color without ramp, temporary arrays are passed in to avoid allocation.
+     */
+    private static int interpolate(int fromColor, int toColor, int interpolation, float dt,
+                                   float[] from, float[] to, float[] result) {
+        if (interpolation == INTERPOLATION_OKLAB) {
+            colorToOklab(fromColor, from);
+            colorToOklab(toColor, to);
+        } else {
+            colorToHsv(fromColor, from);
+            colorToHsv(toColor, to);
+        }
         for (int k = 0; k < 3; k++) {
-            resultColorHsv[k] = fromColorHsv[k] + (toColorHsv[k] - fromColorHsv[k]) * dt;
+            result[k] = from[k] + (to[k] - from[k]) * dt;
+        }
+        return interpolation == INTERPOLATION_OKLAB ? oklabToColor(result) : hsvToColor(result);
+    }
+
+    /**
+     * Same as {@link android.graphics.Color#colorToHSV(int, float[])}, without native calls.
+     */
+    static void colorToHsv(int color, float[] hsv) {
+        int r = (color >> 16) & 0xFF;
+        int g = (color >> 8) & 0xFF;
+        int b = color & 0xFF;
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        float delta = max - min;
+        hsv[2] = max / 255f;
+        if (delta == 0) {
+            hsv[0] = 0;
+            hsv[1] = 0;
+            return;
+        }
+        hsv[1] = delta / max;
+        float h;
+        if (r == max) {
+            h = (g - b) / delta;
+        } else if (g == max) {
+            h = 2 + (b - r) / delta;
+        } else {
+            h = 4 + (r - g) / delta;
+        }
+        h *= 60;
+        if (h < 0) {
+            h += 360;
+        }
+        hsv[0] = h;
+    }
+
+    /**
+     * Same as {@link android.graphics.Color#HSVToColor(float[])}, without native calls.
+     */
+    static int hsvToColor(float[] hsv) {
+        float s = DrawableUtils.between(hsv[1], 0, 1);
+        float v = DrawableUtils.between(hsv[2], 0, 1);
+        int value = Math.round(v * 255);
+        if (s <= 1f / (1 << 12)) {
+            return rgb(value, value, value);
+        }
+        float h = hsv[0];
+        float hx = (h < 0 || h >= 360) ? 0 : h / 60;
+        int w = (int) Math.floor(hx);
+        float f = hx - w;
+        int p = Math.round((1 - s) * v * 255);
+        int q = Math.round((1 - s * f) * v * 255);
+        int t = Math.round((1 - s * (1 - f)) * v * 255);
+        switch (w) {
+            case 0: return rgb(value, t, p);
+            case 1: return rgb(q, value, p);
+            case 2: return rgb(p, value, t);
+            case 3: return rgb(p, q, value);
+            case 4: return rgb(t, p, value);
+            default: return rgb(value, p, q);
         }
-        return Color.HSVToColor(resultColorHsv);
+    }
+
+    static void colorToOklab(int color, float[] lab) {
+        double r = toLinear(((color >> 16) & 0xFF) / 255.0);
+        double g = toLinear(((color >> 8) & 0xFF) / 255.0);
+        double b = toLinear((color & 0xFF) / 255.0);
+        double l = Math.cbrt(0.4122214708 * r + 0.5363325363 * g + 0.0514459929 * b);
+        double m = Math.cbrt(0.2119034982 * r + 0.6806995451 * g + 0.1073969566 * b);
+        double s = Math.cbrt(0.0883024619 * r + 0.2817188376 * g + 0.6299787005 * b);
+        lab[0] = (float) (0.2104542553 * l + 0.7936177850 * m - 0.0040720468 * s);
+        lab[1] = (float) (1.9779984951 * l - 2.4285922050 * m + 0.4505937099 * s);
+        lab[2] = (float) (0.0259040371 * l + 0.7827717662 * m - 0.8086757660 * s);
+    }
+
+    static int oklabToColor(float[] lab) {
+        double l = lab[0] + 0.3963377774 * lab[1] + 0.2158037573 * lab[2];
+        double m = lab[0] - 0.1055613458 * lab[1] - 0.0638541728 * lab[2];
+        double s = lab[0] - 0.0894841775 * lab[1] - 1.2914855480 * lab[2];
+        l = l * l * l;
+        m = m * m * m;
+        s = s * s * s;
+        double r = 4.0767416621 * l - 3.3077115913 * m + 0.2309699292 * s;
+        double g = -1.2684380046 * l + 2.6097574011 * m - 0.3413193965 * s;
+        double b = -0.0041960863 * l - 0.7034186147 * m + 1.7076147010 * s;
+        return rgb(toByte(r), toByte(g), toByte(b));
+    }
+
+    private static double toLinear(double c) {
+        return c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+    }
+
+    private static int toByte(double linear) {
+        double c = linear <= 0.0031308 ? 12.92 * linear : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+        return (int) Math.round(Math.min(Math.max(c, 0), 1) * 255);
+    }
+
+    private static int rgb(int r, int g, int b) {
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
     }
 }
@@ -7,6 +7,15 @@ public class DrawableUtils {
 
 	private DrawableUtils() {}
 
+	/**
+	 * Evaluate piecewise linear function.
+	 * @param t time
+	 * @param pairs pairs of <code>value, time</code>
+	 * @return value at given time
+	 * @deprecated allocates varargs array and scans it on every call,
+	 * use {@link PiecewiseLinearCurve} built once instead
+	 */
+	@Deprecated
 	public static float customFunction(float t, float... pairs) {
 		if (pairs.length == 0 || pairs.length % 2 != 0) {
 			throw new IllegalArgumentException("Length of pairs must be multiple by 2 and greater than zero.");
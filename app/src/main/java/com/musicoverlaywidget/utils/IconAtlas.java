@@ -0,0 +1,130 @@
+package com.musicoverlaywidget.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Atlas of icons pre-rasterised into one shared bitmap.
+ * <p>
+ * Views request regions for drawables at exact pixel sizes of their layout while being constructed,
+ * then owner calls {@link #rasterize()} once. Each region is drawn as a bitmap with src/dst rects,
+ * so icons are not re-scaled from their original resources on every frame.
+ */
+public class IconAtlas {
+
+    public static final int NO_REGION = -1;
+
+    private static final int MAX_WIDTH = 1024;
+    /**
+     * Gap between icons, so bitmap filtering doesn't pick neighbour pixels.
+     */
+    private static final int GAP = 2;
+
+    private final List<Drawable> drawables;
+    private final List<int[]> regions;
+    private final Rect src;
+    private final Rect dst;
+    @Nullable
+    private Bitmap bitmap;
+
+    public IconAtlas() {
+        this.drawables = new ArrayList<>();
+        this.regions = new ArrayList<>();
+        this.src = new Rect();
+        this.dst = new Rect();
+    }
+
+    /**
+     * Request region for drawable of given size. Same drawable and size share one region.
+     * @param drawable drawable
+     * @param width icon width in pixels
+     * @param height icon height in pixels
+     * @return region id
+     * @throws IllegalStateException if atlas is already rasterised
+     */
+    public int region(@NonNull Drawable drawable, int width, int height) {
+        if (bitmap != null) {
+            throw new IllegalStateException("Atlas is already rasterised.");
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Icon size must be greater than zero.");
+        }
+        for (int i = 0; i < regions.size(); i++) {
+            int[] region = regions.get(i);
+            if (drawables.get(i) == drawable && region[2] == width && region[3] == height) {
+                return i;
+            }
+        }
+        drawables.add(drawable);
+        regions.add(new int[] {0, 0, width, height});
+        return regions.size() - 1;
+    }
+
+    /**
+     * Pack all requested regions into shelves and draw icons into atlas bitmap.
+     */
+    public void rasterize() {
+        if (bitmap != null || regions.isEmpty()) {
+            return;
+        }
+        int x = 0, y = 0, shelfHeight = 0, width = 0;
+        for (int[] region : regions) {
+            if (x > 0 && x + region[2] > MAX_WIDTH) {
+                x = 0;
+                y += shelfHeight + GAP;
+                shelfHeight = 0;
+            }
+            region[0] = x;
+            region[1] = y;
+            x += region[2] + GAP;
+            shelfHeight = Math.max(shelfHeight, region[3]);
+            width = Math.max(width, x);
+        }
+        bitmap = Bitmap.createBitmap(width, y + shelfHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        for (int i = 0; i < regions.size(); i++) {
+            int[] region = regions.get(i);
+            Drawable drawable = drawables.get(i);
+            // draw a copy to keep bounds and alpha of configured drawable untouched
+            Drawable.ConstantState state = drawable.getConstantState();
+            if (state != null) {
+                drawable = state.newDrawable();
+            }
+            drawable.setBounds(region[0], region[1], region[0] + region[2], region[1] + region[3]);
+            drawable.draw(canvas);
+        }
+        drawables.clear();
+    }
+
+    /**
+     * Draw icon region. Call from UI thread only, destination rect is shared.
+     * @param canvas canvas
+     * @param region region id, nothing is drawn for {@link #NO_REGION}
+     * @param left left edge of destination
+     * @param top top edge of destination
+     * @param right right edge of destination
+     * @param bottom bottom edge of destination
+     * @param paint paint used to draw, alpha is applied to icon
+     */
+    public void draw(@NonNull Canvas canvas, int region, int left, int top, int right, int bottom, @NonNull Paint paint) {
+        if (region == NO_REGION || bitmap == null || right <= left || bottom <= top) {
+            return;
+        }
+        int[] r = regions.get(region);
+        src.set(r[0], r[1], r[0] + r[2], r[1] + r[3]);
+        dst.set(left, top, right, bottom);
+        canvas.drawBitmap(bitmap, src, dst, paint);
+    }
+
+    public void draw(@NonNull Canvas canvas, int region, @NonNull Rect bounds, @NonNull Paint paint) {
+        draw(canvas, region, bounds.left, bounds.top, bounds.right, bounds.bottom, paint);
+    }
+}
@@ -0,0 +1,65 @@
+package com.musicoverlaywidget.utils;
+
+/**
+ * Immutable piecewise linear function.
+ * <p>
+ * Built once from control points, evaluated with binary search over segments without allocations.
+ * Value is constant before first and after last control point.
+ */
+public final class PiecewiseLinearCurve {
+
+	private final float[] values;
+	private final float[] times;
+
+	/**
+	 * Create curve from control points in same format as {@link DrawableUtils#customFunction(float, float...)}.
+	 * @param pairs pairs of <code>value, time</code>, times must be non-decreasing
+	 */
+	public PiecewiseLinearCurve(float... pairs) {
+		if (pairs.length == 0 || pairs.length % 2 != 0) {
+			throw new IllegalArgumentException("Length of pairs must be multiple by 2 and greater than zero.");
+		}
+		int size = pairs.length / 2;
+		this.values = new float[size];
+		this.times = new float[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = pairs[2 * i];
+			times[i] = pairs[2 * i + 1];
+			if (i > 0 && times[i] < times[i - 1]) {
+				throw new IllegalArgumentException("Times must be non-decreasing.");
+			}
+		}
+	}
+
+	/**
+	 * Evaluate curve.
+	 * @param t time
+	 * @return value at given time
+	 */
+	public float evaluate(float t) {
+		int last = times.length - 1;
+		if (t < times[0]) {
+			return values[0];
+		}
+		if (t >= times[last]) {
+			return values[last];
+		}
+		// find last control point with time <= t
+		int lo = 0, hi = last;
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			if (times[mid] <= t) {
+				lo = mid;
+			} else {
+				hi = mid;
+			}
+		}
+		float aT = times[lo];
+		float bT = times[hi];
+		if (bT == aT) {
+			return values[hi];
+		}
+		float a = values[lo];
+		return a + (t - aT) / (bT - aT) * (values[hi] - a);
+	}
+}
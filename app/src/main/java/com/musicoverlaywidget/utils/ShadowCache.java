@@ -0,0 +1,85 @@
+package com.musicoverlaywidget.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BlurMaskFilter;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of pre-blurred shadow bitmaps.
+ * <p>
+ * Shadows are rasterised once per shape and shadow configuration in software, so views
+ * can draw them as plain bitmaps and stay hardware accelerated instead of using
+ * {@link Paint#setShadowLayer(float, float, float, int)}.
+ */
+public class ShadowCache {
+
+    private static final Map<String, Bitmap> CACHE = new HashMap<>();
+    private static final Map<String, StretchableShadow> STRETCHABLE_CACHE = new HashMap<>();
+
+    private ShadowCache() {}
+
+    /**
+     * Get shadow of circle. Circle center is in the center of bitmap.
+     * @param radius circle radius
+     * @param shadowRadius blur radius, same as for {@link Paint#setShadowLayer(float, float, float, int)}
+     * @param shadowColor shadow color
+     * @return shadow bitmap
+     */
+    @NonNull
+    public static synchronized Bitmap circle(float radius, float shadowRadius, int shadowColor) {
+        String key = "circle:" + radius + ":" + shadowRadius + ":" + shadowColor;
+        Bitmap bitmap = CACHE.get(key);
+        if (bitmap == null) {
+            int size = (int) Math.ceil(2 * (radius + shadowRadius)) + 2;
+            bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            canvas.drawCircle(size / 2f, size / 2f, radius, newShadowPaint(shadowRadius, shadowColor));
+            CACHE.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Get horizontally stretchable shadow of pill (rounded rect with corner radius equal to half of height).
+     * @param radius pill corner radius
+     * @param shadowRadius blur radius, same as for {@link Paint#setShadowLayer(float, float, float, int)}
+     * @param shadowColor shadow color
+     * @return stretchable shadow
+     */
+    @NonNull
+    public static synchronized StretchableShadow pill(float radius, float shadowRadius, int shadowColor) {
+        String key = "pill:" + radius + ":" + shadowRadius + ":" + shadowColor;
+        StretchableShadow shadow = STRETCHABLE_CACHE.get(key);
+        if (shadow == null) {
+            int padding = (int) Math.ceil(shadowRadius) + 1;
+            int capWidth = (int) Math.ceil(radius);
+            // shape is two caps and one pixel wide center column
+            int shapeWidth = 2 * capWidth + 1;
+            int shapeHeight = (int) Math.ceil(2 * radius);
+            Bitmap bitmap = Bitmap.createBitmap(shapeWidth + 2 * padding, shapeHeight + 2 * padding, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            RectF rect = new RectF(padding, padding, padding + shapeWidth, padding + 2 * radius);
+            canvas.drawRoundRect(rect, radius, radius, newShadowPaint(shadowRadius, shadowColor));
+            shadow = new StretchableShadow(bitmap, padding, padding + capWidth);
+            STRETCHABLE_CACHE.put(key, shadow);
+        }
+        return shadow;
+    }
+
+    @NonNull
+    private static Paint newShadowPaint(float shadowRadius, int shadowColor) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.FILL);
+        paint.setColor(shadowColor);
+        if (shadowRadius > 0) {
+            paint.setMaskFilter(new BlurMaskFilter(shadowRadius, BlurMaskFilter.Blur.NORMAL));
+        }
+        return paint;
+    }
+}
@@ -0,0 +1,69 @@
+package com.musicoverlaywidget.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Pre-blurred shadow which can be stretched horizontally.
+ * <p>
+ * Bitmap is split into left cap, one pixel wide center column and right cap.
+ * Caps are drawn as is and center column is stretched to fill the width, like a horizontal nine-patch.
+ */
+public class StretchableShadow {
+
+    private final Bitmap bitmap;
+    private final int padding;
+    private final int leftCapWidth;
+    private final int rightCapWidth;
+    private final Rect src;
+    private final RectF dst;
+
+    /**
+     * @param bitmap shadow bitmap
+     * @param padding distance from bitmap edge to shape edge
+     * @param leftCapWidth width of left cap, center column starts right after it
+     */
+    StretchableShadow(@NonNull Bitmap bitmap, int padding, int leftCapWidth) {
+        this.bitmap = bitmap;
+        this.padding = padding;
+        this.leftCapWidth = leftCapWidth;
+        this.rightCapWidth = bitmap.getWidth() - leftCapWidth - 1;
+        this.src = new Rect();
+        this.dst = new RectF();
+    }
+
+    /**
+     * Draw shadow of shape with given bounds.
+     * @param canvas canvas
+     * @param bounds shape bounds
+     * @param dx shadow x offset
+     * @param dy shadow y offset
+     * @param paint paint, may be used to set alpha or bitmap filtering
+     */
+    public void draw(@NonNull Canvas canvas, @NonNull RectF bounds, float dx, float dy, @Nullable Paint paint) {
+        float left = bounds.left - padding + dx;
+        float right = bounds.right + padding + dx;
+        float top = bounds.top - padding + dy;
+        float bottom = top + bitmap.getHeight();
+        float middleLeft = left + leftCapWidth;
+        float middleRight = Math.max(middleLeft, right - rightCapWidth);
+        int height = bitmap.getHeight();
+
+        src.set(0, 0, leftCapWidth, height);
+        dst.set(left, top, middleLeft, bottom);
+        canvas.drawBitmap(bitmap, src, dst, paint);
+
+        src.set(leftCapWidth, 0, leftCapWidth + 1, height);
+        dst.set(middleLeft, top, middleRight, bottom);
+        canvas.drawBitmap(bitmap, src, dst, paint);
+
+        src.set(leftCapWidth + 1, 0, bitmap.getWidth(), height);
+        dst.set(middleRight, top, middleRight + rightCapWidth, bottom);
+        canvas.drawBitmap(bitmap, src, dst, paint);
+    }
+}
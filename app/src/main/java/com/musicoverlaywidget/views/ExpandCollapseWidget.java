@@ -1,9 +1,5 @@
 package com.musicoverlaywidget.views;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.PropertyValuesHolder;
-import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
 import android.graphics.Canvas;
 import android.graphics.Paint;
@@ -14,7 +10,6 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 import android.view.animation.Interpolator;
-import android.view.animation.LinearInterpolator;
 import android.widget.ImageView;
 
 import com.musicoverlaywidget.Configuration;
@@ -26,8 +21,15 @@ import com.musicoverlaywidget.controllers.State;
 import com.musicoverlaywidget.managers.BoundsCheckerWithOffset;
 import com.musicoverlaywidget.utils.ColorChanger;
 import com.musicoverlaywidget.utils.DrawableUtils;
-
-import java.util.Random;
+import com.musicoverlaywidget.utils.IconAtlas;
+import com.musicoverlaywidget.utils.PiecewiseLinearCurve;
+import com.musicoverlaywidget.utils.ShadowCache;
+import com.musicoverlaywidget.utils.StretchableShadow;
+import com.musicoverlaywidget.views.animations.AnimationChannel;
+import com.musicoverlaywidget.views.animations.AnimationClock;
+import com.musicoverlaywidget.views.animations.BubbleEngine;
+import com.musicoverlaywidget.views.animations.FrameStats;
+import com.musicoverlaywidget.views.animations.KeyframeTimeline;
 
 /**
  * Expanded state view.
@@ -56,7 +58,17 @@ public class ExpandCollapseWidget extends ImageView implements PlaybackState.Pla
 	private static final float COLLAPSE_SIZE_END_F = 12 * Configuration.FRAME_SPEED;
 	private static final float COLLAPSE_POSITION_START_F = 3 * Configuration.FRAME_SPEED;
 	private static final float COLLAPSE_POSITION_END_F = 12 * Configuration.FRAME_SPEED;
-
+	private static final float KEYFRAME_STEP_F = Configuration.FRAME_SPEED / 8;
+
+	private static final int TRACK_COLOR = 0;
+	private static final int TRACK_PILL_LEFT = 1;
+	private static final int TRACK_PILL_RIGHT = 2;
+	private static final int TRACK_PLAY_LEFT = 3;
+	private static final int TRACK_ELEMENTS = 4;
+	private static final int TRACK_BUBBLES_ALPHA = 5;
+	private static final int TRACK_BUBBLES_TIME = 6;
+	private static final int TRACK_ALPHA = 7;
+	private static final int TRACKS_COUNT = 8;
 
 	private static final int INDEX_PLAYLIST = 0;
 	private static final int INDEX_PREV = 1;
@@ -65,10 +77,18 @@ public class ExpandCollapseWidget extends ImageView implements PlaybackState.Pla
 	private static final int INDEX_ALBUM = 4;
 	private static final int INDEX_PAUSE = 5;
 
-	private static final int TOTAL_BUBBLES_COUNT = 30;
+	public static final int DEFAULT_BUBBLES_COUNT = 30;
+
+	private static final PiecewiseLinearCurve BUBBLES_ALPHA = new PiecewiseLinearCurve(0, 0, 255, 0.33f, 255, 0.66f, 0, 1f);
 
 
 	private final Paint paint;
+	private final Paint shadowPaint;
+	@Nullable
+	private final StretchableShadow shadow;
+	private final boolean softwareShadow;
+	private final float shadowDx;
+	private final float shadowDy;
 	private final float radius;
 	private final float widgetWidth;
 	private final float widgetHeight;
@@ -76,29 +96,35 @@ public class ExpandCollapseWidget extends ImageView implements PlaybackState.Pla
 	private final int playColor;
 	private final int pauseColor;
 	private final int widgetColor;
-	private final Drawable[] drawables;
+	private final IconAtlas iconAtlas;
+	private final int[] icons;
+	private final Paint iconPaint;
 	private final Rect[] buttonBounds;
 	private final float sizeStep;
-	private final float[] bubbleSizes;
-	private final float[] bubbleSpeeds;
-	private final float[] bubblePositions;
-    private final float bubblesMinSize;
-    private final float bubblesMaxSize;
-	private final Random random;
+	private final BubbleEngine bubbles;
 	private final Paint bubblesPaint;
 	private final RectF bounds;
 	private final Rect tmpRect;
+	private final Rect playRect;
+	private final int[] elementCentersX;
+	private final int[] elementCentersY;
+	private final float[] elementMaxSizes;
+	private final KeyframeTimeline[] timelines;
+	private final float[] frame;
 	private final PlaybackState playbackState;
-	private final ValueAnimator expandAnimator;
-	private final ValueAnimator collapseAnimator;
+	private final AnimationChannel expandAnimator;
+	private final AnimationChannel collapseAnimator;
     private final int buttonPadding;
     private final int prevNextExtraPadding;
     private final Interpolator accDecInterpolator;
-    private final ValueAnimator touchDownAnimator;
-    private final ValueAnimator touchUpAnimator;
-    private final ValueAnimator bubblesTouchAnimator;
+    private final AnimationChannel touchDownAnimator;
+    private final AnimationChannel touchUpAnimator;
+    private final AnimationChannel bubblesTouchAnimator;
 
 	private float bubblesTime;
+	private float colorFraction;
+	private float elementsTime;
+	private int elementsAlpha;
 	private boolean expanded;
 	private boolean animatingExpand, animatingCollapse;
 	private int expandDirection;
@@ -111,13 +137,14 @@ public class ExpandCollapseWidget extends ImageView implements PlaybackState.Pla
     private AnimationProgressListener expandListener;
     @Nullable
     private AnimationProgressListener collapseListener;
+    @Nullable
+    private Runnable firstExpandFrameListener;
+    private boolean expandFrameDrawn;
 
 	public ExpandCollapseWidget(@NonNull Configuration configuration) {
 		super(configuration.context());
-		setLayerType(LAYER_TYPE_SOFTWARE, null);
 		this.playbackState = configuration.playbackState();
         this.accDecInterpolator = configuration.accDecInterpolator();
-		this.random = configuration.random();
 		this.bubblesPaint = new Paint();
 		this.bubblesPaint.setStyle(Paint.Style.FILL);
 		this.bubblesPaint.setAntiAlias(true);
@@ -126,165 +153,157 @@ public class ExpandCollapseWidget extends ImageView implements PlaybackState.Pla
 		this.paint = new Paint();
 		this.paint.setColor(configuration.expandedColor());
 		this.paint.setAntiAlias(true);
-		this.paint.setShadowLayer(
-                configuration.shadowRadius(),
-                configuration.shadowDx(),
-                configuration.shadowDy(),
-                configuration.shadowColor()
-        );
+		this.softwareShadow = configuration.renderMode() == Configuration.RENDER_MODE_SOFTWARE;
+		if (softwareShadow) {
+			setLayerType(LAYER_TYPE_SOFTWARE, null);
+			this.paint.setShadowLayer(
+					configuration.shadowRadius(),
+					configuration.shadowDx(),
+					configuration.shadowDy(),
+					configuration.shadowColor()
+			);
+			this.shadow = null;
+		} else {
+			this.shadow = ShadowCache.pill(
+					configuration.radius(),
+					configuration.shadowRadius(),
+					configuration.shadowColor()
+			);
+		}
+		this.shadowDx = configuration.shadowDx();
+		this.shadowDy = configuration.shadowDy();
+		this.shadowPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 		this.radius = configuration.radius();
 		this.widgetWidth = configuration.widgetWidth();
-		this.colorChanger = new ColorChanger();
+		this.colorChanger = new ColorChanger(configuration.colorInterpolation());
 		this.playColor = configuration.darkColor();
 		this.pauseColor = configuration.lightColor();
 		this.widgetColor = configuration.expandedColor();
         this.buttonPadding = configuration.buttonPadding();
         this.prevNextExtraPadding = configuration.prevNextExtraPadding();
-        this.bubblesMinSize = configuration.bubblesMinSize();
-        this.bubblesMaxSize = configuration.bubblesMaxSize();
 		this.tmpRect = new Rect();
 		this.buttonBounds = new Rect[5];
-		this.drawables = new Drawable[6];
 		this.bounds = new RectF();
-		this.drawables[INDEX_PLAYLIST] = configuration.playlistDrawable().getConstantState().newDrawable().mutate();
-		this.drawables[INDEX_PREV] = configuration.prevDrawable().getConstantState().newDrawable().mutate();
-		this.drawables[INDEX_PLAY] = configuration.playDrawable().getConstantState().newDrawable().mutate();
-		this.drawables[INDEX_PAUSE] = configuration.pauseDrawable().getConstantState().newDrawable().mutate();
-		this.drawables[INDEX_NEXT] = configuration.nextDrawable().getConstantState().newDrawable().mutate();
 		this.sizeStep = widgetWidth / 5f;
 		this.widgetHeight = radius * 2;
+		this.playRect = new Rect();
+		this.elementCentersX = new int[buttonBounds.length];
+		this.elementCentersY = new int[buttonBounds.length];
+		this.elementMaxSizes = new float[buttonBounds.length];
 		for (int i = 0; i < buttonBounds.length; i++) {
 			buttonBounds[i] = new Rect();
+			calculateBounds(i, tmpRect);
+			elementCentersX[i] = tmpRect.centerX();
+			elementCentersY[i] = tmpRect.centerY();
+			int padding = buttonPadding;
+			if (i == INDEX_PREV || i == INDEX_NEXT) {
+				padding += prevNextExtraPadding;
+			}
+			elementMaxSizes[i] = sizeStep / 2f - padding;
 		}
-		this.bubbleSizes = new float[TOTAL_BUBBLES_COUNT];
-		this.bubbleSpeeds = new float[TOTAL_BUBBLES_COUNT];
-		this.bubblePositions = new float[TOTAL_BUBBLES_COUNT * 2];
+		calculateBounds(INDEX_PLAY, playRect);
+		this.iconAtlas = configuration.iconAtlas();
+		this.icons = new int[6];
+		this.icons[INDEX_PLAYLIST] = elementIcon(configuration.playlistDrawable(), INDEX_PLAYLIST);
+		this.icons[INDEX_PREV] = elementIcon(configuration.prevDrawable(), INDEX_PREV);
+		this.icons[INDEX_NEXT] = elementIcon(configuration.nextDrawable(), INDEX_NEXT);
+		this.icons[INDEX_ALBUM] = IconAtlas.NO_REGION;
+		this.icons[INDEX_PLAY] = iconAtlas.region(configuration.playDrawable(), playRect.width(), playRect.height());
+		this.icons[INDEX_PAUSE] = iconAtlas.region(configuration.pauseDrawable(), playRect.width(), playRect.height());
+		this.iconPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		this.timelines = new KeyframeTimeline[4];
+		this.frame = new float[TRACKS_COUNT];
+		this.bubbles = BubbleEngine.linear(
+				configuration.expandedBubblesCount(),
+				widgetWidth,
+				configuration.bubblesMinSize(),
+				configuration.bubblesMaxSize(),
+				configuration.random()
+		);
 		this.playbackState.addPlaybackStateListener(this);
 
-        this.expandAnimator = ValueAnimator.ofPropertyValuesHolder(
-                PropertyValuesHolder.ofFloat("percent", 0f, 1f),
-                PropertyValuesHolder.ofInt("expandPosition", 0, (int) EXPAND_DURATION_L),
-                PropertyValuesHolder.ofFloat("alpha", 0f, 1f, 1f, 1f, 1f, 1f, 1f, 1f, 1f, 1f, 1f, 1f, 1f)
-        ).setDuration(EXPAND_DURATION_L);
-
-        LinearInterpolator interpolator = new LinearInterpolator();
-        this.expandAnimator.setInterpolator(interpolator);
-		this.expandAnimator.addUpdateListener(animation -> {
-			updateExpandAnimation((int) animation.getAnimatedValue("expandPosition"));
-            setAlpha((float) animation.getAnimatedValue("alpha"));
-			invalidate();
-
-            if(expandListener != null) {
-                expandListener.onValueChanged((float) animation.getAnimatedValue("percent"));
-            }
-		});
-		this.expandAnimator.addListener(new AnimatorListenerAdapter() {
-			@Override
-			public void onAnimationStart(Animator animation) {
-				super.onAnimationStart(animation);
-				animatingExpand = true;
-			}
-
-			@Override
-			public void onAnimationEnd(Animator animation) {
-				super.onAnimationEnd(animation);
-				animatingExpand = false;
-				expanded = true;
-				if (onWidgetStateChangedListener != null) {
-					onWidgetStateChangedListener.onWidgetStateChanged(State.EXPANDED);
-				}
-			}
-
-			@Override
-			public void onAnimationCancel(Animator animation) {
-				super.onAnimationCancel(animation);
-				animatingExpand = false;
-			}
-		});
-		this.collapseAnimator = ValueAnimator.ofPropertyValuesHolder(
-                PropertyValuesHolder.ofFloat("percent", 0f, 1f),
-                PropertyValuesHolder.ofInt("expandPosition", 0, (int) COLLAPSE_DURATION_L),
-                PropertyValuesHolder.ofFloat("alpha", 1f, 1f, 1f, 1f, 1f, 1f, 1f, 1f, 1f, 1f, 0f)
-        ).setDuration(COLLAPSE_DURATION_L);
-        this.collapseAnimator.setInterpolator(interpolator);
-		this.collapseAnimator.addUpdateListener(animation -> {
-			updateCollapseAnimation((int) animation.getAnimatedValue("expandPosition"));
-            setAlpha((float) animation.getAnimatedValue("alpha"));
-			invalidate();
-
-            if(collapseListener != null) {
-                collapseListener.onValueChanged((float) animation.getAnimatedValue("percent"));
-            }
-		});
-		this.collapseAnimator.addListener(new AnimatorListenerAdapter() {
-			@Override
-			public void onAnimationStart(Animator animation) {
-				super.onAnimationStart(animation);
-				animatingCollapse = true;
-			}
-
-			@Override
-			public void onAnimationEnd(Animator animation) {
-				super.onAnimationEnd(animation);
-				animatingCollapse = false;
-				expanded = false;
-				if (onWidgetStateChangedListener != null) {
-					onWidgetStateChangedListener.onWidgetStateChanged(State.COLLAPSED);
-				}
-			}
-
-			@Override
-			public void onAnimationCancel(Animator animation) {
-				super.onAnimationCancel(animation);
-				animatingCollapse = false;
-			}
-		});
+		AnimationClock clock = configuration.animationClock();
+		this.expandAnimator = new AnimationChannel(clock)
+				.stats(FrameStats.ANIMATION_EXPAND)
+				.duration(EXPAND_DURATION_L)
+				.listener(channel -> {
+					float percent = channel.value();
+					updateExpandAnimation(percent * EXPAND_DURATION_F);
+					invalidate();
+
+					if (expandListener != null) {
+						expandListener.onValueChanged(percent);
+					}
+				})
+				.onEndListener((channel, canceled) -> {
+					animatingExpand = false;
+					useHardwareLayer(false);
+					if (canceled) {
+						return;
+					}
+					expanded = true;
+					if (onWidgetStateChangedListener != null) {
+						onWidgetStateChangedListener.onWidgetStateChanged(State.EXPANDED);
+					}
+				});
+		this.collapseAnimator = new AnimationChannel(clock)
+				.stats(FrameStats.ANIMATION_COLLAPSE)
+				.duration(COLLAPSE_DURATION_L)
+				.listener(channel -> {
+					float percent = channel.value();
+					updateCollapseAnimation(percent * COLLAPSE_DURATION_F);
+					invalidate();
+
+					if (collapseListener != null) {
+						collapseListener.onValueChanged(percent);
+					}
+				})
+				.onEndListener((channel, canceled) -> {
+					animatingCollapse = false;
+					useHardwareLayer(false);
+					if (canceled) {
+						return;
+					}
+					expanded = false;
+					if (onWidgetStateChangedListener != null) {
+						onWidgetStateChangedListener.onWidgetStateChanged(State.COLLAPSED);
+					}
+				});
 		this.padding = configuration.context().getResources().getDimensionPixelSize(R.dimen.widget_expand_collapse_widget_padding);
-        ValueAnimator.AnimatorUpdateListener listener = animation -> {
+        AnimationChannel.Listener listener = channel -> {
             if (touchedButtonIndex == -1 || touchedButtonIndex >= buttonBounds.length) {
                 return;
             }
             calculateBounds(touchedButtonIndex, tmpRect);
             Rect rect = buttonBounds[touchedButtonIndex];
-            float width = tmpRect.width() * (float) animation.getAnimatedValue() / 2;
-            float height = tmpRect.height() * (float) animation.getAnimatedValue() / 2;
+            float width = tmpRect.width() * channel.value() / 2;
+            float height = tmpRect.height() * channel.value() / 2;
             int l = (int) (tmpRect.centerX() - width);
             int r = (int) (tmpRect.centerX() + width);
             int t = (int) (tmpRect.centerY() - height);
             int b = (int) (tmpRect.centerY() + height);
             rect.set(l, t, r, b);
-            invalidate(rect);
-        };
-        touchDownAnimator = ValueAnimator.ofFloat(1, 0.9f).setDuration(Configuration.TOUCH_ANIMATION_DURATION);
-        touchDownAnimator.addUpdateListener(listener);
-        touchUpAnimator = ValueAnimator.ofFloat(0.9f, 1f).setDuration(Configuration.TOUCH_ANIMATION_DURATION);
-        touchUpAnimator.addUpdateListener(listener);
-        bubblesTouchAnimator = ValueAnimator.ofFloat(0, EXPAND_BUBBLES_END_F - EXPAND_BUBBLES_START_F)
-                .setDuration((long) (EXPAND_BUBBLES_END_F - EXPAND_BUBBLES_START_F));
-        bubblesTouchAnimator.setInterpolator(interpolator);
-        bubblesTouchAnimator.addUpdateListener(animation -> {
-            bubblesTime = animation.getAnimatedFraction();
-            bubblesPaint.setAlpha((int) DrawableUtils.customFunction(bubblesTime, 0, 0, 255, 0.33f, 255, 0.66f, 0, 1f));
             invalidate();
-        });
-        bubblesTouchAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationStart(Animator animation) {
-                super.onAnimationStart(animation);
-            }
-
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-                bubblesTime = 0;
-            }
-
-            @Override
-            public void onAnimationCancel(Animator animation) {
-                super.onAnimationCancel(animation);
-                bubblesTime = 0;
-            }
-        });
+        };
+        touchDownAnimator = new AnimationChannel(clock)
+                .values(1, 0.9f)
+                .duration(Configuration.TOUCH_ANIMATION_DURATION)
+                .interpolator(accDecInterpolator)
+                .listener(listener);
+        touchUpAnimator = new AnimationChannel(clock)
+                .values(0.9f, 1f)
+                .duration(Configuration.TOUCH_ANIMATION_DURATION)
+                .interpolator(accDecInterpolator)
+                .listener(listener);
+        bubblesTouchAnimator = new AnimationChannel(clock)
+                .stats(FrameStats.ANIMATION_BUBBLES)
+                .duration((long) (EXPAND_BUBBLES_END_F - EXPAND_BUBBLES_START_F))
+                .listener(channel -> {
+                    bubblesTime = channel.fraction();
+                    bubblesPaint.setAlpha((int) BUBBLES_ALPHA.evaluate(bubblesTime));
+                    invalidate();
+                })
+                .onEndListener((channel, canceled) -> bubblesTime = 0);
     }
 
 	@Override
@@ -296,116 +315,142 @@ public class ExpandCollapseWidget extends ImageView implements PlaybackState.Pla
 
 	@Override
 	protected void onDraw(@NonNull Canvas canvas) {
-		if (bubblesTime >= 0) {
-			int half = TOTAL_BUBBLES_COUNT / 2;
-			for (int i = 0; i < TOTAL_BUBBLES_COUNT; i++) {
-				float radius = bubbleSizes[i];
-				float speed = bubbleSpeeds[i] * bubblesTime;
-				float cx = bubblePositions[2 * i];
-				float cy = bubblePositions[2 * i + 1];
-				if (i < half)
-					cy *= (1 - speed);
-				else
-					cy *= (1 + speed);
-				canvas.drawCircle(cx, cy, radius, bubblesPaint);
-			}
+		if (bubblesTime >= 0 && bubblesPaint.getAlpha() > 0) {
+			float cy = widgetHeight + padding;
+			bubbles.update(bubblesTime, padding, cy, cy);
+			bubbles.draw(canvas, bubblesPaint);
+		}
+		if (shadow != null) {
+			shadow.draw(canvas, bounds, shadowDx, shadowDy, shadowPaint);
 		}
 		canvas.drawRoundRect(bounds, radius, radius, paint);
 		drawMediaButtons(canvas);
+		if (animatingExpand && !expandFrameDrawn) {
+			expandFrameDrawn = true;
+			if (firstExpandFrameListener != null) {
+				firstExpandFrameListener.run();
+			}
+		}
 	}
 
 	private void drawMediaButtons(@NonNull Canvas canvas) {
 		for (int i = 0; i < buttonBounds.length; i++) {
-			Drawable drawable;
+			int icon;
 			if (i == INDEX_PLAY) {
 				if (playbackState.state() == Configuration.STATE_PLAYING) {
-					drawable = drawables[INDEX_PAUSE];
+					icon = icons[INDEX_PAUSE];
 				} else {
-					drawable = drawables[INDEX_PLAY];
+					icon = icons[INDEX_PLAY];
 				}
+				iconPaint.setAlpha(255);
 			} else {
-				drawable = drawables[i];
+				icon = icons[i];
+				iconPaint.setAlpha(elementsAlpha);
 			}
-			drawable.setBounds(buttonBounds[i]);
-			drawable.draw(canvas);
+			iconAtlas.draw(canvas, icon, buttonBounds[i], iconPaint);
 		}
 	}
 
-	private void updateExpandAnimation(long position) {
-		if (DrawableUtils.isBetween(position, 0, EXPAND_COLOR_END_F)) {
-			float t = DrawableUtils.normalize(position, 0, EXPAND_COLOR_END_F);
-			paint.setColor(colorChanger.nextColor(t));
-		}
-		if (DrawableUtils.isBetween(position, 0, EXPAND_SIZE_END_F)) {
-			float time = DrawableUtils.normalize(position, 0, EXPAND_SIZE_END_F);
-            time = accDecInterpolator.getInterpolation(time);
-			float l, r, t, b;
-			float height = radius * 2;
-			t = radius;
-			b = t + height;
-			if (expandDirection == DIRECTION_LEFT) {
-				r = widgetWidth;
-				l = r - height - (widgetWidth - height) * time;
-			} else {
-				l = 0;
-				r = l + height + (widgetWidth - height) * time;
-			}
-			bounds.set(l, t, r, b);
-		} else if (position > EXPAND_SIZE_END_F) {
-			if (expandDirection == DIRECTION_LEFT) {
-				bounds.left = 0;
-			} else {
-				bounds.right = widgetWidth;
-			}
+	/**
+	 * Request atlas region for element at its fully expanded size.
+	 */
+	private int elementIcon(@NonNull Drawable drawable, int index) {
+		int size = Math.max(1, Math.round(2 * elementMaxSizes[index]));
+		return iconAtlas.region(drawable, size, size);
+	}
 
+	private void updateExpandAnimation(float position) {
+		timeline(true, expandDirection).sample(position, frame);
+		applyFrame(frame, true);
+	}
+
+	private void updateCollapseAnimation(float position) {
+		timeline(false, expandDirection).sample(position, frame);
+		applyFrame(frame, false);
+	}
+
+	private void applyFrame(@NonNull float[] frame, boolean expanding) {
+		if (frame[TRACK_COLOR] != colorFraction) {
+			colorFraction = frame[TRACK_COLOR];
+			paint.setColor(colorChanger.nextColor(colorFraction));
 		}
-		if (DrawableUtils.isBetween(position, 0, EXPAND_POSITION_START_F)) {
-			if (expandDirection == DIRECTION_LEFT) {
-				calculateBounds(INDEX_ALBUM, buttonBounds[INDEX_PLAY]);
-			} else {
-				calculateBounds(INDEX_PLAYLIST, buttonBounds[INDEX_PLAY]);
-			}
-		}
-		if (DrawableUtils.isBetween(position, 0, EXPAND_ELEMENTS_START_F)) {
-			for (int i = 0; i < buttonBounds.length; i++) {
-				if (i != INDEX_PLAY) {
-					drawables[i].setAlpha(0);
-				}
-			}
+		bounds.set(frame[TRACK_PILL_LEFT], radius, frame[TRACK_PILL_RIGHT], radius * 3);
+		int l = (int) frame[TRACK_PLAY_LEFT];
+		buttonBounds[INDEX_PLAY].set(l, playRect.top, l + playRect.width(), playRect.bottom);
+		if (frame[TRACK_ELEMENTS] != elementsTime) {
+			elementsTime = frame[TRACK_ELEMENTS];
+			expandCollapseElements(elementsTime);
 		}
-		if (DrawableUtils.isBetween(position, EXPAND_ELEMENTS_START_F, EXPAND_ELEMENTS_END_F)) {
-			float time = DrawableUtils.normalize(position, EXPAND_ELEMENTS_START_F, EXPAND_ELEMENTS_END_F);
-			expandCollapseElements(time);
+		if (expanding) {
+			bubblesPaint.setAlpha((int) frame[TRACK_BUBBLES_ALPHA]);
+			bubblesTime = frame[TRACK_BUBBLES_TIME];
 		}
-		if (DrawableUtils.isBetween(position, EXPAND_POSITION_START_F, EXPAND_POSITION_END_F)) {
-			float time = DrawableUtils.normalize(position, EXPAND_POSITION_START_F, EXPAND_POSITION_END_F);
-            time = accDecInterpolator.getInterpolation(time);
-			Rect playBounds = buttonBounds[INDEX_PLAY];
-			calculateBounds(INDEX_PLAY, playBounds);
-			int l, t, r, b;
-			t = playBounds.top;
-			b = playBounds.bottom;
-			if (expandDirection == DIRECTION_LEFT) {
-				calculateBounds(INDEX_ALBUM, tmpRect);
-				l = (int) DrawableUtils.reduce(tmpRect.left, playBounds.left, time);
-				r = l + playBounds.width();
-			} else {
-				calculateBounds(INDEX_PLAYLIST, tmpRect);
-				l = (int) DrawableUtils.enlarge(tmpRect.left, playBounds.left, time);
-				r = l + playBounds.width();
-			}
-			playBounds.set(l, t, r, b);
-		} else if (position >= EXPAND_POSITION_END_F) {
-			calculateBounds(INDEX_PLAY, buttonBounds[INDEX_PLAY]);
+		setAlpha(frame[TRACK_ALPHA]);
+	}
+
+	/**
+	 * Get compiled timeline for animation and direction. Timelines are compiled on first use.
+	 */
+	@NonNull
+	private KeyframeTimeline timeline(boolean expand, int direction) {
+		int index = (expand ? 0 : 2) + (direction == DIRECTION_LEFT ? 0 : 1);
+		KeyframeTimeline timeline = timelines[index];
+		if (timeline == null) {
+			timeline = expand ? compileExpandTimeline(direction) : compileCollapseTimeline(direction);
+			timelines[index] = timeline;
 		}
-		if (DrawableUtils.isBetween(position, EXPAND_BUBBLES_START_F, EXPAND_BUBBLES_END_F)) {
-			float time = DrawableUtils.normalize(position, EXPAND_BUBBLES_START_F, EXPAND_BUBBLES_END_F);
-			bubblesPaint.setAlpha((int) DrawableUtils.customFunction(time, 0, 0, 255, 0.33f, 255, 0.66f, 0, 1f));
+		return timeline;
+	}
+
+	@NonNull
+	private KeyframeTimeline compileExpandTimeline(int direction) {
+		calculateBounds(direction == DIRECTION_LEFT ? INDEX_ALBUM : INDEX_PLAYLIST, tmpRect);
+		float startLeft = tmpRect.left;
+		float endLeft = playRect.left;
+		return new KeyframeTimeline(EXPAND_DURATION_F, KEYFRAME_STEP_F, TRACKS_COUNT, (position, values) -> {
+			values[TRACK_COLOR] = DrawableUtils.normalize(position, 0, EXPAND_COLOR_END_F);
+			float size = accDecInterpolator.getInterpolation(DrawableUtils.normalize(position, 0, EXPAND_SIZE_END_F));
+			pillBounds(direction, size, values);
+			float move = accDecInterpolator.getInterpolation(DrawableUtils.normalize(position, EXPAND_POSITION_START_F, EXPAND_POSITION_END_F));
+			values[TRACK_PLAY_LEFT] = startLeft + (endLeft - startLeft) * move;
+			values[TRACK_ELEMENTS] = DrawableUtils.normalize(position, EXPAND_ELEMENTS_START_F, EXPAND_ELEMENTS_END_F);
+			float bubbles = DrawableUtils.normalize(position, EXPAND_BUBBLES_START_F, EXPAND_BUBBLES_END_F);
+			values[TRACK_BUBBLES_TIME] = bubbles;
+			values[TRACK_BUBBLES_ALPHA] = DrawableUtils.isBetween(position, EXPAND_BUBBLES_START_F, EXPAND_BUBBLES_END_F)
+					? BUBBLES_ALPHA.evaluate(bubbles)
+					: 0;
+			// fade in during first twelfth of animation
+			values[TRACK_ALPHA] = Math.min(1, 12 * position / EXPAND_DURATION_F);
+		});
+	}
+
+	@NonNull
+	private KeyframeTimeline compileCollapseTimeline(int direction) {
+		calculateBounds(direction == DIRECTION_LEFT ? INDEX_ALBUM : INDEX_PLAYLIST, tmpRect);
+		float startLeft = playRect.left;
+		float endLeft = tmpRect.left;
+		return new KeyframeTimeline(COLLAPSE_DURATION_F, KEYFRAME_STEP_F, TRACKS_COUNT, (position, values) -> {
+			values[TRACK_ELEMENTS] = 1 - DrawableUtils.normalize(position, 0, COLLAPSE_ELEMENTS_END_F);
+			float move = accDecInterpolator.getInterpolation(DrawableUtils.normalize(position, COLLAPSE_POSITION_START_F, COLLAPSE_POSITION_END_F));
+			values[TRACK_PLAY_LEFT] = startLeft + (endLeft - startLeft) * move;
+			float size = accDecInterpolator.getInterpolation(DrawableUtils.normalize(position, COLLAPSE_SIZE_START_F, COLLAPSE_SIZE_END_F));
+			values[TRACK_COLOR] = size;
+			pillBounds(direction, 1 - size, values);
+			values[TRACK_BUBBLES_TIME] = 0;
+			values[TRACK_BUBBLES_ALPHA] = 0;
+			// fade out during last tenth of animation
+			values[TRACK_ALPHA] = Math.min(1, 10 * (1 - position / COLLAPSE_DURATION_F));
+		});
+	}
+
+	private void pillBounds(int direction, float size, @NonNull float[] values) {
+		float height = radius * 2;
+		if (direction == DIRECTION_LEFT) {
+			values[TRACK_PILL_RIGHT] = widgetWidth;
+			values[TRACK_PILL_LEFT] = widgetWidth - height - (widgetWidth - height) * size;
 		} else {
-            bubblesPaint.setAlpha(0);
-        }
-        if (DrawableUtils.isBetween(position, EXPAND_BUBBLES_START_F, EXPAND_BUBBLES_END_F)) {
-			bubblesTime = DrawableUtils.normalize(position, EXPAND_BUBBLES_START_F, EXPAND_BUBBLES_END_F);
+			values[TRACK_PILL_LEFT] = 0;
+			values[TRACK_PILL_RIGHT] = height + (widgetWidth - height) * size;
 		}
 	}
 
@@ -425,70 +470,14 @@ public class ExpandCollapseWidget extends ImageView implements PlaybackState.Pla
 		bounds.set(l, t, r, b);
 	}
 
-	private void updateCollapseAnimation(long position) {
-		if (DrawableUtils.isBetween(position, 0, COLLAPSE_ELEMENTS_END_F)) {
-			float time = 1 - DrawableUtils.normalize(position, 0, COLLAPSE_ELEMENTS_END_F);
-			expandCollapseElements(time);
-		}
-		if (position > COLLAPSE_ELEMENTS_END_F) {
-			for (int i = 0; i < buttonBounds.length; i++) {
-				if (i != INDEX_PLAY) {
-					drawables[i].setAlpha(0);
-				}
-			}
-		}
-		if (DrawableUtils.isBetween(position, COLLAPSE_POSITION_START_F, COLLAPSE_POSITION_END_F)) {
-			float time = DrawableUtils.normalize(position, COLLAPSE_POSITION_START_F, COLLAPSE_POSITION_END_F);
-            time = accDecInterpolator.getInterpolation(time);
-			Rect playBounds = buttonBounds[INDEX_PLAY];
-			calculateBounds(INDEX_PLAY, playBounds);
-			int l, t, r, b;
-			t = playBounds.top;
-			b = playBounds.bottom;
-			if (expandDirection == DIRECTION_LEFT) {
-				calculateBounds(INDEX_ALBUM, tmpRect);
-				l = (int) DrawableUtils.enlarge(playBounds.left, tmpRect.left, time);
-				r = l + playBounds.width();
-			} else {
-				calculateBounds(INDEX_PLAYLIST, tmpRect);
-				l = (int) DrawableUtils.reduce(playBounds.left, tmpRect.left, time);
-				r = l + playBounds.width();
-			}
-			buttonBounds[INDEX_PLAY].set(l, t, r, b);
-		}
-		if (DrawableUtils.isBetween(position, COLLAPSE_SIZE_START_F, COLLAPSE_SIZE_END_F)) {
-			float time = DrawableUtils.normalize(position, COLLAPSE_SIZE_START_F, COLLAPSE_SIZE_END_F);
-            time = accDecInterpolator.getInterpolation(time);
-			paint.setColor(colorChanger.nextColor(time));
-			float l, r, t, b;
-			float height = radius * 2;
-			t = radius;
-			b = t + height;
-			if (expandDirection == DIRECTION_LEFT) {
-				r = widgetWidth;
-				l = r - height - (widgetWidth - height) * (1 - time);
-			} else {
-				l = 0;
-				r = l + height + (widgetWidth - height) * (1 - time);
-			}
-			bounds.set(l, t, r, b);
-		}
-	}
-
 	private void expandCollapseElements(float time) {
-		int alpha = (int) DrawableUtils.between(time * 255, 0, 255);
+		elementsAlpha = (int) DrawableUtils.between(time * 255, 0, 255);
         for (int i = 0; i < buttonBounds.length; i++) {
             if (i != INDEX_PLAY) {
-                int padding = buttonPadding;
-                if (i == INDEX_PREV || i == INDEX_NEXT) {
-                    padding += prevNextExtraPadding;
-                }
-				calculateBounds(i, buttonBounds[i]);
-				float size = time * (sizeStep / 2f - padding);
-				int cx = buttonBounds[i].centerX();
-				int cy = buttonBounds[i].centerY();
+				float size = time * elementMaxSizes[i];
+				int cx = elementCentersX[i];
+				int cy = elementCentersY[i];
 				buttonBounds[i].set((int) (cx - size), (int) (cy - size), (int) (cx + size), (int) (cy + size));
-				drawables[i].setAlpha(alpha);
 			}
 		}
 	}
@@ -559,6 +548,7 @@ public class ExpandCollapseWidget extends ImageView implements PlaybackState.Pla
 		if (isAnimationInProgress())
 			return;
 		animatingExpand = true;
+		expandFrameDrawn = false;
 		if (playbackState.state() == Configuration.STATE_PLAYING) {
 			colorChanger
 					.fromColor(playColor)
@@ -570,33 +560,40 @@ public class ExpandCollapseWidget extends ImageView implements PlaybackState.Pla
 					.toColor(widgetColor);
 		}
         randomizeBubblesPosition();
+		colorFraction = -1;
+		elementsTime = -1;
+		useHardwareLayer(true);
+		invalidate();
 		expandAnimator.start();
 	}
 
     private void randomizeBubblesPosition() {
-        int half = TOTAL_BUBBLES_COUNT / 2;
-        float step = widgetWidth / half;
-        for (int i = 0; i < TOTAL_BUBBLES_COUNT; i++) {
-            int index = i % half;
-            float speed = 0.3f + 0.7f * random.nextFloat();
-            float size = bubblesMinSize + (bubblesMaxSize - bubblesMinSize) * random.nextFloat();
-            float radius = size / 2f;
-            float cx = padding + index * step + step * random.nextFloat() * (random.nextBoolean() ? 1 : -1);
-            float cy = widgetHeight + padding;
-            bubbleSpeeds[i] = speed;
-            bubbleSizes[i] = radius;
-            bubblePositions[2 * i] = cx;
-            bubblePositions[2 * i + 1] = cy;
-        }
+        bubbles.nextPattern();
     }
 
     private void startCollapseAnimation() {
 		if (isAnimationInProgress()) {
 			return;
 		}
+		colorFraction = -1;
+		elementsTime = -1;
+		animatingCollapse = true;
+		useHardwareLayer(true);
+		invalidate();
 		collapseAnimator.start();
 	}
 
+	/**
+	 * Keep view on hardware layer while animating, so per-frame alpha changes
+	 * are applied on composition. Not used with software shadows.
+	 */
+	private void useHardwareLayer(boolean use) {
+		if (softwareShadow) {
+			return;
+		}
+		setLayerType(use ? LAYER_TYPE_HARDWARE : LAYER_TYPE_NONE, null);
+	}
+
 	public boolean isAnimationInProgress() {
 		return animatingCollapse || animatingExpand;
 	}
@@ -628,6 +625,13 @@ public class ExpandCollapseWidget extends ImageView implements PlaybackState.Pla
 
 	}
 
+	@Override
+	public void onPlaybackChanged(@NonNull PlaybackState.Snapshot oldSnapshot, @NonNull PlaybackState.Snapshot newSnapshot, Object initiator) {
+		if (oldSnapshot.state() != newSnapshot.state()) {
+			invalidate();
+		}
+	}
+
 	public ExpandCollapseWidget onWidgetStateChangedListener(OnWidgetStateChangedListener onWidgetStateChangedListener) {
 		this.onWidgetStateChangedListener = onWidgetStateChangedListener;
 		return this;
@@ -673,6 +677,13 @@ public class ExpandCollapseWidget extends ImageView implements PlaybackState.Pla
         this.expandListener = expandListener;
     }
 
+    /**
+     * @param firstExpandFrameListener called when first frame of each expand animation is drawn
+     */
+    public void setFirstExpandFrameListener(@Nullable Runnable firstExpandFrameListener) {
+        this.firstExpandFrameListener = firstExpandFrameListener;
+    }
+
 	public interface AnimationProgressListener {
         void onValueChanged(float percent);
     }
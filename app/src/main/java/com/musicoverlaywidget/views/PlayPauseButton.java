@@ -1,14 +1,13 @@
 package com.musicoverlaywidget.views;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ValueAnimator;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.RectF;
-import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
-import android.view.animation.LinearInterpolator;
+import android.support.annotation.Nullable;
+import android.view.animation.Interpolator;
 import android.widget.ImageView;
 
 import com.musicoverlaywidget.Configuration;
@@ -18,37 +17,49 @@ import com.musicoverlaywidget.managers.BoundsCheckerWithOffset;
 import com.musicoverlaywidget.managers.TouchManager;
 import com.musicoverlaywidget.utils.ColorChanger;
 import com.musicoverlaywidget.utils.DrawableUtils;
-
-import java.util.Random;
+import com.musicoverlaywidget.utils.IconAtlas;
+import com.musicoverlaywidget.utils.PiecewiseLinearCurve;
+import com.musicoverlaywidget.utils.ShadowCache;
+import com.musicoverlaywidget.views.animations.AnimationChannel;
+import com.musicoverlaywidget.views.animations.AnimationClock;
+import com.musicoverlaywidget.views.animations.BubbleEngine;
+import com.musicoverlaywidget.views.animations.FrameStats;
 
 
 public class PlayPauseButton extends ImageView implements PlaybackState.PlaybackStateListener {
 
     public static final long PROGRESS_CHANGES_DURATION = (long) (6 * Configuration.FRAME_SPEED);
-    private static final float BUBBLES_ANGLE_STEP = 18.0f;
+    public static final int DEFAULT_BUBBLES_COUNT = 20;
     private static final float ANIMATION_TIME_F = 8 * Configuration.FRAME_SPEED;
     private static final long ANIMATION_TIME_L = (long) ANIMATION_TIME_F;
     private static final float COLOR_ANIMATION_TIME_F = ANIMATION_TIME_F / 4f;
     private static final float COLOR_ANIMATION_TIME_START_F = (ANIMATION_TIME_F - COLOR_ANIMATION_TIME_F) / 2;
     private static final float COLOR_ANIMATION_TIME_END_F = COLOR_ANIMATION_TIME_START_F + COLOR_ANIMATION_TIME_F;
-    private static final int TOTAL_BUBBLES_COUNT = (int) (360 / BUBBLES_ANGLE_STEP);
     private static final long PROGRESS_STEP_DURATION = (long) (3 * Configuration.FRAME_SPEED);
+    private static final PiecewiseLinearCurve BUBBLES_ALPHA = new PiecewiseLinearCurve(0, 0, 0, 0.3f, 255, 0.5f, 225, 0.7f, 0, 1f);
 
     private final PlaybackState playbackState;
-    private final Random random;
     private final ColorChanger colorChanger;
+    private final BubbleEngine bubbles;
 
     private final Paint buttonPaint;
     private final Paint bubblesPaint;
     private final Paint progressPaint;
+    private final Paint shadowPaint;
+
+    @Nullable
+    private final Bitmap shadowBitmap;
+    private final float shadowDx;
+    private final float shadowDy;
 
-    private final float bubblesMinSize;
     private final float radius;
-    private final float bubblesMaxSize;
     private float buttonSize = 1.0f;
-    private float randomStartAngle;
+    private float bubblesTime;
     private float progress = 0.0f;
     private float animatedProgress = 0;
+    private final float progressDegreesPerPixel;
+    private long skippedProgressUpdates;
+    private long renderedProgressUpdates;
 
     private final int pausedColor;
     private final int playingColor;
@@ -56,39 +67,58 @@ public class PlayPauseButton extends ImageView implements PlaybackState.Playback
 
     private final RectF bounds;
 
-    private final float[] bubbleSizes;
-    private final float[] bubbleSpeeds;
-    private final float[] bubbleSpeedCoefficients;
-
-    private final Drawable playDrawable;
-    private final Drawable pauseDrawable;
+    private final IconAtlas iconAtlas;
+    private final int playIcon;
+    private final int pauseIcon;
+    private final Paint iconPaint;
+    private int playAlpha = 255;
+    private int pauseAlpha = 0;
 
-    private final ValueAnimator touchDownAnimator;
-    private final ValueAnimator touchUpAnimator;
-    private final ValueAnimator bubblesAnimator;
-    private final ValueAnimator progressAnimator;
+    private final AnimationChannel touchDownAnimator;
+    private final AnimationChannel touchUpAnimator;
+    private final AnimationChannel bubblesAnimator;
+    private final AnimationChannel progressAnimator;
 
     private boolean animatingBubbles;
     private boolean progressChangesEnabled;
+    private boolean progressHidden;
+    private boolean attached;
+    private boolean windowVisible;
+    private boolean frameRateConsumer;
 
 
     public PlayPauseButton(@NonNull Configuration configuration) {
         super(configuration.context());
-        setLayerType(LAYER_TYPE_SOFTWARE, null);
         this.playbackState = configuration.playbackState();
-        this.random = configuration.random();
         this.buttonPaint = new Paint();
         this.buttonPaint.setColor(configuration.lightColor());
         this.buttonPaint.setStyle(Paint.Style.FILL);
         this.buttonPaint.setAntiAlias(true);
-        this.buttonPaint.setShadowLayer(
-                configuration.shadowRadius(),
-                configuration.shadowDx(),
-                configuration.shadowDy(),
-                configuration.shadowColor()
+        if (configuration.renderMode() == Configuration.RENDER_MODE_SOFTWARE) {
+            setLayerType(LAYER_TYPE_SOFTWARE, null);
+            this.buttonPaint.setShadowLayer(
+                    configuration.shadowRadius(),
+                    configuration.shadowDx(),
+                    configuration.shadowDy(),
+                    configuration.shadowColor()
+            );
+            this.shadowBitmap = null;
+        } else {
+            this.shadowBitmap = ShadowCache.circle(
+                    configuration.radius(),
+                    configuration.shadowRadius(),
+                    configuration.shadowColor()
+            );
+        }
+        this.shadowDx = configuration.shadowDx();
+        this.shadowDy = configuration.shadowDy();
+        this.shadowPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        this.bubbles = BubbleEngine.radial(
+                configuration.buttonBubblesCount(),
+                configuration.bubblesMinSize(),
+                configuration.bubblesMaxSize(),
+                configuration.random()
         );
-        this.bubblesMinSize = configuration.bubblesMinSize();
-        this.bubblesMaxSize = configuration.bubblesMaxSize();
         this.bubblesPaint = new Paint();
         this.bubblesPaint.setStyle(Paint.Style.FILL);
         this.progressPaint = new Paint();
@@ -100,58 +130,88 @@ public class PlayPauseButton extends ImageView implements PlaybackState.Playback
         this.playingColor = configuration.darkColor();
         this.radius = configuration.radius();
         this.buttonPadding = configuration.buttonPadding();
+        float arcRadius = radius - configuration.progressStrokeWidth() / 2f;
+        this.progressDegreesPerPixel = arcRadius > 0 ? (float) (360 / (2 * Math.PI * arcRadius)) : 360;
         this.bounds = new RectF();
-        this.bubbleSizes = new float[TOTAL_BUBBLES_COUNT];
-        this.bubbleSpeeds = new float[TOTAL_BUBBLES_COUNT];
-        this.bubbleSpeedCoefficients = new float[TOTAL_BUBBLES_COUNT];
-        this.colorChanger = new ColorChanger();
-        this.playDrawable = configuration.playDrawable().getConstantState().newDrawable().mutate();
-        this.pauseDrawable = configuration.pauseDrawable().getConstantState().newDrawable().mutate();
-        this.pauseDrawable.setAlpha(0);
+        this.colorChanger = new ColorChanger(configuration.colorInterpolation());
+        this.iconAtlas = configuration.iconAtlas();
+        int iconSize = Math.round(2 * (radius - buttonPadding));
+        this.playIcon = iconAtlas.region(configuration.playDrawable(), iconSize, iconSize);
+        this.pauseIcon = iconAtlas.region(configuration.pauseDrawable(), iconSize, iconSize);
+        this.iconPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
         this.playbackState.addPlaybackStateListener(this);
+        this.playbackState.progressDispatcher().progressStep(progressDegreesPerPixel / 360);
 
-        final ValueAnimator.AnimatorUpdateListener listener = animation -> {
-            buttonSize = (float) animation.getAnimatedValue();
+        AnimationClock clock = configuration.animationClock();
+        Interpolator accDecInterpolator = configuration.accDecInterpolator();
+        AnimationChannel.Listener listener = channel -> {
+            buttonSize = channel.value();
             invalidate();
         };
 
-        this.touchDownAnimator = ValueAnimator.ofFloat(1, 0.9f).setDuration(Configuration.TOUCH_ANIMATION_DURATION);
-        this.touchDownAnimator.addUpdateListener(listener);
-        this.touchUpAnimator = ValueAnimator.ofFloat(0.9f, 1).setDuration(Configuration.TOUCH_ANIMATION_DURATION);
-        this.touchUpAnimator.addUpdateListener(listener);
-        this.bubblesAnimator = ValueAnimator.ofInt(0, (int) ANIMATION_TIME_L).setDuration(ANIMATION_TIME_L);
-        this.bubblesAnimator.setInterpolator(new LinearInterpolator());
-        this.bubblesAnimator.addUpdateListener(animation -> {
-            long position = animation.getCurrentPlayTime();
-            float fraction = animation.getAnimatedFraction();
-            updateBubblesPosition(position, fraction);
-            invalidate();
-        });
-        this.bubblesAnimator.addListener(new AnimatorListenerAdapter() {
+        this.touchDownAnimator = new AnimationChannel(clock)
+                .values(1, 0.9f)
+                .duration(Configuration.TOUCH_ANIMATION_DURATION)
+                .interpolator(accDecInterpolator)
+                .listener(listener);
+        this.touchUpAnimator = new AnimationChannel(clock)
+                .values(0.9f, 1)
+                .duration(Configuration.TOUCH_ANIMATION_DURATION)
+                .interpolator(accDecInterpolator)
+                .listener(listener);
+        this.bubblesAnimator = new AnimationChannel(clock)
+                .stats(FrameStats.ANIMATION_BUBBLES)
+                .duration(ANIMATION_TIME_L)
+                .listener(channel -> {
+                    updateBubblesPosition(channel.playTime(), channel.fraction());
+                    invalidate();
+                })
+                .onEndListener((channel, canceled) -> animatingBubbles = false);
+        this.progressAnimator = new AnimationChannel(clock)
+                .stats(FrameStats.ANIMATION_PROGRESS)
+                .interpolator(accDecInterpolator)
+                .listener(channel -> {
+                    animatedProgress = channel.value();
+                    invalidate();
+                })
+                .onEndListener((channel, canceled) -> updateFrameRateConsumer());
+    }
 
-            @Override
-            public void onAnimationStart(Animator animation) {
-                super.onAnimationStart(animation);
-                animatingBubbles = true;
-            }
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        attached = true;
+        updateFrameRateConsumer();
+    }
 
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-                animatingBubbles = false;
-            }
+    @Override
+    protected void onDetachedFromWindow() {
+        attached = false;
+        updateFrameRateConsumer();
+        super.onDetachedFromWindow();
+    }
 
-            @Override
-            public void onAnimationCancel(Animator animation) {
-                super.onAnimationCancel(animation);
-                animatingBubbles = false;
-            }
-        });
-        this.progressAnimator = new ValueAnimator();
-        this.progressAnimator.addUpdateListener(animation -> {
-            animatedProgress = (float) animation.getAnimatedValue();
-            invalidate();
-        });
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        windowVisible = visibility == VISIBLE;
+        updateFrameRateConsumer();
+    }
+
+    /**
+     * Progress is needed on every frame only while shown arc is animating on screen,
+     * otherwise dispatcher delivers it once per pixel of arc.
+     */
+    private void updateFrameRateConsumer() {
+        boolean consumer = attached && windowVisible && !progressHidden && progressAnimator.isRunning();
+        if (consumer == frameRateConsumer)
+            return;
+        frameRateConsumer = consumer;
+        if (consumer) {
+            playbackState.progressDispatcher().addFrameRateConsumer();
+        } else {
+            playbackState.progressDispatcher().removeFrameRateConsumer();
+        }
     }
 
     @Override
@@ -161,22 +221,20 @@ public class PlayPauseButton extends ImageView implements PlaybackState.Playback
     }
 
     private void updateBubblesPosition(long position, float fraction) {
-        int alpha = (int) DrawableUtils.customFunction(fraction, 0, 0, 0, 0.3f, 255, 0.5f, 225, 0.7f, 0, 1f);
+        int alpha = (int) BUBBLES_ALPHA.evaluate(fraction);
         bubblesPaint.setAlpha(alpha);
         if (DrawableUtils.isBetween(position, COLOR_ANIMATION_TIME_START_F, COLOR_ANIMATION_TIME_END_F)) {
             float colorDt = DrawableUtils.normalize(position, COLOR_ANIMATION_TIME_START_F, COLOR_ANIMATION_TIME_END_F);
             buttonPaint.setColor(colorChanger.nextColor(colorDt));
             if (playbackState.state() == Configuration.STATE_PLAYING) {
-                pauseDrawable.setAlpha((int) DrawableUtils.between(255 * colorDt, 0, 255));
-                playDrawable.setAlpha((int) DrawableUtils.between(255 * (1 - colorDt), 0, 255));
+                pauseAlpha = (int) DrawableUtils.between(255 * colorDt, 0, 255);
+                playAlpha = (int) DrawableUtils.between(255 * (1 - colorDt), 0, 255);
             } else {
-                playDrawable.setAlpha((int) DrawableUtils.between(255 * colorDt, 0, 255));
-                pauseDrawable.setAlpha((int) DrawableUtils.between(255 * (1 - colorDt), 0, 255));
+                playAlpha = (int) DrawableUtils.between(255 * colorDt, 0, 255);
+                pauseAlpha = (int) DrawableUtils.between(255 * (1 - colorDt), 0, 255);
             }
         }
-        for (int i=0; i<TOTAL_BUBBLES_COUNT; i++) {
-            bubbleSpeeds[i] = fraction * bubbleSpeedCoefficients[i];
-        }
+        bubblesTime = fraction;
     }
 
     public void onClick() {
@@ -198,14 +256,9 @@ public class PlayPauseButton extends ImageView implements PlaybackState.Playback
     }
 
     private void startBubblesAnimation() {
-        randomStartAngle = 360 * random.nextFloat();
-        for (int i=0; i<TOTAL_BUBBLES_COUNT; i++) {
-            float speed = 0.5f + 0.5f * random.nextFloat();
-            float size = bubblesMinSize + (bubblesMaxSize - bubblesMinSize) * random.nextFloat();
-            float radius = size / 2f;
-            bubbleSizes[i] = radius;
-            bubbleSpeedCoefficients[i] = speed;
-        }
+        bubbles.nextPattern();
+        bubblesTime = 0;
+        animatingBubbles = true;
         bubblesAnimator.start();
     }
 
@@ -227,29 +280,30 @@ public class PlayPauseButton extends ImageView implements PlaybackState.Playback
         float cy = getHeight() >> 1;
         canvas.scale(buttonSize, buttonSize, cx, cy);
         if (animatingBubbles) {
-            for (int i = 0; i < TOTAL_BUBBLES_COUNT; i++) {
-                float angle = randomStartAngle + BUBBLES_ANGLE_STEP * i;
-                float speed = bubbleSpeeds[i];
-                float x = DrawableUtils.rotateX(cx, cy * (1 - speed), cx, cy, angle);
-                float y = DrawableUtils.rotateY(cx, cy * (1 - speed), cx, cy, angle);
-                canvas.drawCircle(x, y, bubbleSizes[i], bubblesPaint);
-            }
+            bubbles.update(bubblesTime, cx, cy, cy);
+            bubbles.draw(canvas, bubblesPaint);
         } else if (playbackState.state() != Configuration.STATE_PLAYING) {
-            playDrawable.setAlpha(255);
-            pauseDrawable.setAlpha(0);
+            playAlpha = 255;
+            pauseAlpha = 0;
             // in case widget was drawn without animation in different state
             if (buttonPaint.getColor() != pausedColor) {
                 buttonPaint.setColor(pausedColor);
             }
         } else {
-            playDrawable.setAlpha(0);
-            pauseDrawable.setAlpha(255);
+            playAlpha = 0;
+            pauseAlpha = 255;
             // in case widget was drawn without animation in different state
             if (buttonPaint.getColor() != playingColor) {
                 buttonPaint.setColor(playingColor);
             }
         }
 
+        if (shadowBitmap != null) {
+            canvas.drawBitmap(shadowBitmap,
+                    cx - shadowBitmap.getWidth() / 2f + shadowDx,
+                    cy - shadowBitmap.getHeight() / 2f + shadowDy,
+                    shadowPaint);
+        }
         canvas.drawCircle(cx, cy, radius, buttonPaint);
 
         float padding = progressPaint.getStrokeWidth() / 2f;
@@ -261,12 +315,12 @@ public class PlayPauseButton extends ImageView implements PlaybackState.Playback
         int r = (int) (cx + radius - buttonPadding);
         int b = (int) (cy + radius - buttonPadding);
         if (animatingBubbles || playbackState.state() != Configuration.STATE_PLAYING) {
-            playDrawable.setBounds(l, t, r, b);
-            playDrawable.draw(canvas);
+            iconPaint.setAlpha(playAlpha);
+            iconAtlas.draw(canvas, playIcon, l, t, r, b, iconPaint);
         }
         if (animatingBubbles || playbackState.state() == Configuration.STATE_PLAYING) {
-            pauseDrawable.setBounds(l, t, r, b);
-            pauseDrawable.draw(canvas);
+            iconPaint.setAlpha(pauseAlpha);
+            iconAtlas.draw(canvas, pauseIcon, l, t, r, b, iconPaint);
         }
     }
 
@@ -276,41 +330,81 @@ public class PlayPauseButton extends ImageView implements PlaybackState.Playback
             return;
         if (newState == Configuration.STATE_PLAYING) {
             buttonPaint.setColor(playingColor);
-            pauseDrawable.setAlpha(255);
-            playDrawable.setAlpha(0);
+            pauseAlpha = 255;
+            playAlpha = 0;
         } else {
             buttonPaint.setColor(pausedColor);
-            pauseDrawable.setAlpha(0);
-            playDrawable.setAlpha(255);
+            pauseAlpha = 0;
+            playAlpha = 255;
         }
         postInvalidate();
     }
 
     @Override
     public void onProgressChanged(int position, int duration, float percentage) {
+        // delivered on UI thread once per frame by ProgressDispatcher
+        if (Math.abs(percentage - progress) * 360 < progressDegreesPerPixel) {
+            // visible arc wouldn't change by a pixel
+            skippedProgressUpdates++;
+            return;
+        }
         if (percentage > progress) {
-            float old = progress;
-            post(() -> {
-                if (animateProgressChanges(old * 360, percentage * 360, PROGRESS_STEP_DURATION)) {
-                    progress = percentage;
-                }
-            });
+            if (animateProgressChanges(progress * 360, percentage * 360, PROGRESS_STEP_DURATION)) {
+                progress = percentage;
+                renderedProgressUpdates++;
+            } else {
+                skippedProgressUpdates++;
+            }
         } else {
             this.progress = percentage;
             this.animatedProgress = percentage * 360;
-            postInvalidate();
+            renderedProgressUpdates++;
+            invalidate();
+        }
+    }
+
+    /**
+     * @return number of progress updates dropped because arc wouldn't visibly change
+     */
+    public long skippedProgressUpdates() {
+        return skippedProgressUpdates;
+    }
+
+    /**
+     * @return number of progress updates which caused redraw
+     */
+    public long renderedProgressUpdates() {
+        return renderedProgressUpdates;
+    }
+
+    @Override
+    public void onPlaybackChanged(@NonNull PlaybackState.Snapshot oldSnapshot, @NonNull PlaybackState.Snapshot newSnapshot, Object initiator) {
+        if (oldSnapshot.state() != newSnapshot.state()) {
+            onStateChanged(oldSnapshot.state(), newSnapshot.state(), initiator);
         }
+        // batched update carries progress, dispatcher doesn't deliver it again
+        int duration = newSnapshot.duration();
+        int position = newSnapshot.positionAt(SystemClock.elapsedRealtime());
+        onProgressChanged(position, duration, duration > 0 ? 1f * position / duration : 0);
     }
 
-    public void enableProgressChanges(boolean enable) {
+    /**
+     * Show or hide progress with animation of {@link #PROGRESS_CHANGES_DURATION}.
+     * @param enable true to show progress, false to hide it
+     * @return true if animation was started, false if progress is already in requested state
+     */
+    public boolean enableProgressChanges(boolean enable) {
         if (progressChangesEnabled == enable)
-            return;
+            return false;
         progressChangesEnabled = enable;
+        progressHidden = !enable;
+        updateFrameRateConsumer();
         if (progressChangesEnabled) {
             animateProgressChangesForce(0, progress * 360, PROGRESS_CHANGES_DURATION);
         } else {
             animateProgressChangesForce(progress * 360, 0, PROGRESS_CHANGES_DURATION);
         }
+        return true;
     }
 
     private void animateProgressChangesForce(float oldValue, float newValue, long duration) {
@@ -324,9 +418,11 @@ public class PlayPauseButton extends ImageView implements PlaybackState.Playback
         if (progressAnimator.isRunning()) {
             return false;
         }
-        progressAnimator.setFloatValues(oldValue, newValue);
-        progressAnimator.setDuration(duration);
-        progressAnimator.start();
+        progressAnimator
+                .values(oldValue, newValue)
+                .duration(duration)
+                .start();
+        updateFrameRateConsumer();
         return true;
     }
 
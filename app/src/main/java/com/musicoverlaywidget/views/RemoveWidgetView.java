@@ -1,6 +1,5 @@
 package com.musicoverlaywidget.views;
 
-import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
 import android.graphics.Canvas;
 import android.graphics.Paint;
@@ -9,6 +8,7 @@ import android.view.View;
 
 import com.musicoverlaywidget.Configuration;
 import com.musicoverlaywidget.utils.DrawableUtils;
+import com.musicoverlaywidget.views.animations.AnimationChannel;
 
 /**
  * Remove widget view.
@@ -18,13 +18,14 @@ public class RemoveWidgetView extends View {
 
 	public static final float SCALE_DEFAULT = 1.0f;
 	public static final float SCALE_LARGE = 1.5f;
+	private static final long SCALE_ANIMATION_DURATION = 300;
 
 	private final float size;
 	private final float radius;
 	private final Paint paint;
     private final int defaultColor;
     private final int overlappedColor;
-    private final ValueAnimator sizeAnimator;
+    private final AnimationChannel sizeAnimator;
     private float scale = 1.0f;
 
 	public RemoveWidgetView(@NonNull Configuration configuration) {
@@ -39,11 +40,13 @@ public class RemoveWidgetView extends View {
 		paint.setStrokeWidth(configuration.crossStrokeWidth());
 		paint.setColor(configuration.crossColor());
 		paint.setStrokeCap(Paint.Cap.ROUND);
-        sizeAnimator = new ValueAnimator();
-        sizeAnimator.addUpdateListener(animation -> {
-            scale = (float) animation.getAnimatedValue();
-            invalidate();
-        });
+        sizeAnimator = new AnimationChannel(configuration.animationClock())
+                .duration(SCALE_ANIMATION_DURATION)
+                .interpolator(configuration.accDecInterpolator())
+                .listener(channel -> {
+                    scale = channel.value();
+                    invalidate();
+                });
 	}
 
 	@Override
@@ -82,13 +85,13 @@ public class RemoveWidgetView extends View {
     public void setOverlapped(boolean overlapped) {
         sizeAnimator.cancel();
         if (overlapped) {
-            sizeAnimator.setFloatValues(scale, SCALE_LARGE);
+            sizeAnimator.values(scale, SCALE_LARGE);
             if (paint.getColor() != overlappedColor) {
                 paint.setColor(overlappedColor);
                 invalidate();
             }
         } else {
-            sizeAnimator.setFloatValues(scale, SCALE_DEFAULT);
+            sizeAnimator.values(scale, SCALE_DEFAULT);
             if (paint.getColor() != defaultColor) {
                 paint.setColor(defaultColor);
                 invalidate();
@@ -0,0 +1,211 @@
+package com.musicoverlaywidget.views.animations;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.animation.Interpolator;
+
+/**
+ * Float animation driven by {@link AnimationClock}.
+ * <p>
+ * Values are kept as primitives and read directly from channel in listener, nothing is boxed per frame.
+ * Like {@link android.animation.ValueAnimator}, channel delivers initial value synchronously
+ * on {@link #start()} and starts counting time from the first frame after that.
+ * Duration is scaled with {@link AnimationClock#durationScale()} taken on start, values, fractions and
+ * {@link #playTime()} are reported in unscaled time.
+ * Default interpolator is linear.
+ */
+public class AnimationChannel {
+
+    private final AnimationClock clock;
+    @Nullable
+    private Interpolator interpolator;
+    @Nullable
+    private Listener listener;
+    @Nullable
+    private OnEndListener onEndListener;
+    private long duration;
+    private float from;
+    private float to = 1;
+    private float value;
+    private float fraction;
+    private long playTime;
+    private long startTime;
+    private long lastFrameTime;
+    private float durationScale;
+    private int statsAnimation = -1;
+    private boolean running;
+
+    public AnimationChannel(@NonNull AnimationClock clock) {
+        this.clock = clock;
+    }
+
+    public AnimationChannel duration(long duration) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Duration can't be negative.");
+        }
+        this.duration = duration;
+        return this;
+    }
+
+    public AnimationChannel values(float from, float to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    public AnimationChannel interpolator(@Nullable Interpolator interpolator) {
+        this.interpolator = interpolator;
+        return this;
+    }
+
+    public AnimationChannel listener(@Nullable Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public AnimationChannel onEndListener(@Nullable OnEndListener onEndListener) {
+        this.onEndListener = onEndListener;
+        return this;
+    }
+
+    /**
+     * Record frames of this channel in {@link FrameStats} of clock. Several channels may record
+     * the same animation, e.g. both windows snapping to edge, each clock tick is recorded once.
+     * @param animation one of {@link FrameStats} <code>ANIMATION_*</code> constants
+     */
+    public AnimationChannel stats(int animation) {
+        if (animation < 0 || animation >= FrameStats.ANIMATIONS_COUNT) {
+            throw new IllegalArgumentException("Unknown animation: " + animation);
+        }
+        this.statsAnimation = animation;
+        return this;
+    }
+
+    /**
+     * Start animation from the beginning. Restarts channel if it's already running, without end callback.
+     */
+    public void start() {
+        running = true;
+        startTime = -1;
+        durationScale = clock.durationScale();
+        update(0);
+        if (running) {
+            clock.add(this);
+        }
+    }
+
+    /**
+     * Stop animation at current value. Does nothing if channel is not running.
+     */
+    public void cancel() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        clock.remove(this);
+        if (onEndListener != null) {
+            onEndListener.onEnd(this, true);
+        }
+    }
+
+    void doFrame(long frameTimeMillis) {
+        FrameStats stats = statsAnimation >= 0 ? clock.frameStats() : null;
+        if (startTime < 0) {
+            // initial value is already delivered by start()
+            startTime = frameTimeMillis;
+            lastFrameTime = frameTimeMillis;
+            if (stats != null) {
+                stats.onStarted(statsAnimation, frameTimeMillis);
+            }
+            if (durationScale == 0) {
+                finish();
+            }
+            return;
+        }
+        if (stats != null) {
+            stats.onFrame(statsAnimation, frameTimeMillis, frameTimeMillis - lastFrameTime);
+        }
+        lastFrameTime = frameTimeMillis;
+        long time = frameTimeMillis - startTime;
+        if (time >= duration * durationScale) {
+            finish();
+        } else {
+            update((long) (time / durationScale));
+        }
+    }
+
+    private void finish() {
+        update(duration);
+        if (running) {
+            running = false;
+            clock.remove(this);
+            if (onEndListener != null) {
+                onEndListener.onEnd(this, false);
+            }
+        }
+    }
+
+    private void update(long playTime) {
+        this.playTime = playTime;
+        float linear = duration == 0 ? 1 : (float) playTime / duration;
+        fraction = interpolator == null ? linear : interpolator.getInterpolation(linear);
+        value = from + (to - from) * fraction;
+        if (listener != null) {
+            listener.onUpdate(this);
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return animated value
+     */
+    public float value() {
+        return value;
+    }
+
+    /**
+     * @return interpolated fraction
+     */
+    public float fraction() {
+        return fraction;
+    }
+
+    /**
+     * @return time passed since animation start in milliseconds
+     */
+    public long playTime() {
+        return playTime;
+    }
+
+    public long duration() {
+        return duration;
+    }
+
+    /**
+     * Listener of animation frames.
+     */
+    public interface Listener {
+
+        /**
+         * Called on start and each frame of animation.
+         * @param channel animated channel
+         */
+        void onUpdate(@NonNull AnimationChannel channel);
+    }
+
+    /**
+     * Listener of animation end.
+     */
+    public interface OnEndListener {
+
+        /**
+         * Called when animation is finished or canceled.
+         * @param channel animated channel
+         * @param canceled true if animation was canceled
+         */
+        void onEnd(@NonNull AnimationChannel channel, boolean canceled);
+    }
+}
@@ -0,0 +1,140 @@
+package com.musicoverlaywidget.views.animations;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * Widget-wide animation clock.
+ * <p>
+ * All running {@link AnimationChannel}s are ticked in one pass per vsync from a single
+ * {@link Choreographer.FrameCallback}. Clock posts frame callback only while there are running channels.
+ * Clock created without choreographer never schedules itself and must be ticked
+ * manually with {@link #tick(long)}, which is useful for offscreen rendering.
+ * Durations of channels are scaled with {@link #durationScale(float)}, like platform animators
+ * are scaled with animator duration scale from developer options.
+ * Must be used from one thread only.
+ */
+public class AnimationClock implements Choreographer.FrameCallback {
+
+    @Nullable
+    private final Choreographer choreographer;
+    private final ArrayList<AnimationChannel> channels;
+    private final ArrayList<AnimationChannel> frameChannels;
+    @Nullable
+    private Runnable frameEndListener;
+    @Nullable
+    private FrameStats frameStats;
+    private float durationScale = 1;
+    private boolean scheduled;
+
+    /**
+     * @param choreographer choreographer used to schedule frames, null for manual ticking
+     */
+    public AnimationClock(@Nullable Choreographer choreographer) {
+        this.choreographer = choreographer;
+        this.channels = new ArrayList<>();
+        this.frameChannels = new ArrayList<>();
+    }
+
+    /**
+     * @param frameEndListener called after all channels are ticked in a frame, e.g. to flush batched window moves
+     */
+    public AnimationClock frameEndListener(@Nullable Runnable frameEndListener) {
+        this.frameEndListener = frameEndListener;
+        return this;
+    }
+
+    /**
+     * @param frameStats statistics to record frames of channels in, null to disable recording
+     */
+    public AnimationClock frameStats(@Nullable FrameStats frameStats) {
+        this.frameStats = frameStats;
+        return this;
+    }
+
+    @Nullable
+    public FrameStats frameStats() {
+        return frameStats;
+    }
+
+    /**
+     * @param durationScale scale of durations of channels started after this call,
+     *                      0 makes channels jump to their end on the next frame
+     */
+    public AnimationClock durationScale(float durationScale) {
+        if (durationScale < 0) {
+            throw new IllegalArgumentException("Duration scale can't be negative.");
+        }
+        this.durationScale = durationScale;
+        return this;
+    }
+
+    public float durationScale() {
+        return durationScale;
+    }
+
+    void add(@NonNull AnimationChannel channel) {
+        if (!channels.contains(channel)) {
+            channels.add(channel);
+        }
+        schedule();
+    }
+
+    void remove(@NonNull AnimationChannel channel) {
+        channels.remove(channel);
+    }
+
+    private void schedule() {
+        if (scheduled || choreographer == null || channels.isEmpty()) {
+            return;
+        }
+        scheduled = true;
+        choreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        tick(frameTimeNanos / 1000000);
+    }
+
+    /**
+     * Advance all running channels to given frame time.
+     * Channels started from callbacks during this tick are advanced from next tick.
+     * @param frameTimeMillis frame time in milliseconds
+     */
+    public void tick(long frameTimeMillis) {
+        // channels may be started or canceled from callbacks, iterate over copy
+        for (int i = 0; i < channels.size(); i++) {
+            frameChannels.add(channels.get(i));
+        }
+        for (int i = 0; i < frameChannels.size(); i++) {
+            AnimationChannel channel = frameChannels.get(i);
+            if (channel.isRunning()) {
+                channel.doFrame(frameTimeMillis);
+            }
+        }
+        frameChannels.clear();
+        if (frameEndListener != null) {
+            frameEndListener.run();
+        }
+        schedule();
+    }
+
+    /**
+     * @return true if no channel is running
+     */
+    public boolean isIdle() {
+        return channels.isEmpty();
+    }
+
+    /**
+     * @return number of running channels
+     */
+    public int activeChannelsCount() {
+        return channels.size();
+    }
+}
@@ -0,0 +1,204 @@
+package com.musicoverlaywidget.views.animations;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+
+import java.util.Random;
+
+/**
+ * Allocation-free engine for bubble bursts.
+ * <p>
+ * All randomness is generated once, into a bank of patterns. Each trigger only picks a pattern.
+ * Particles are kept in struct-of-arrays form with precomputed directions, so updating a
+ * frame is a multiply-add per coordinate. Particle sizes are quantized into a few buckets and
+ * particles of a pattern are stored grouped by bucket, so a burst is drawn with one
+ * {@link Canvas#drawPoints(float[], int, int, Paint)} call per bucket.
+ */
+public class BubbleEngine {
+
+    private static final int PATTERNS_COUNT = 8;
+    private static final int SIZE_BUCKETS_COUNT = 4;
+
+    private final int count;
+    private final Random random;
+    private final float[] dirX;
+    private final float[] dirY;
+    private final float[] offsetX;
+    private final float[] offsetY;
+    private final float[] speeds;
+    private final int[] bucketStarts;
+    private final float[] bucketRadii;
+    private final float[] points;
+    private int pattern;
+
+    private BubbleEngine(int count, float minSize, float maxSize, @NonNull Random random) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Bubbles count must be greater than zero.");
+        }
+        this.count = count;
+        this.random = random;
+        this.dirX = new float[PATTERNS_COUNT * count];
+        this.dirY = new float[PATTERNS_COUNT * count];
+        this.offsetX = new float[PATTERNS_COUNT * count];
+        this.offsetY = new float[PATTERNS_COUNT * count];
+        this.speeds = new float[PATTERNS_COUNT * count];
+        this.bucketStarts = new int[PATTERNS_COUNT * (SIZE_BUCKETS_COUNT + 1)];
+        this.bucketRadii = new float[SIZE_BUCKETS_COUNT];
+        this.points = new float[count * 2];
+        for (int b = 0; b < SIZE_BUCKETS_COUNT; b++) {
+            float size = minSize + (maxSize - minSize) * (b + 0.5f) / SIZE_BUCKETS_COUNT;
+            bucketRadii[b] = size / 2f;
+        }
+    }
+
+    /**
+     * Create engine for bubbles flying out of the center in all directions.
+     * @param count bubbles count
+     * @param minSize minimum bubble size
+     * @param maxSize maximum bubble size
+     * @param random random used to generate patterns and pick them
+     * @return new engine
+     */
+    @NonNull
+    public static BubbleEngine radial(int count, float minSize, float maxSize, @NonNull Random random) {
+        BubbleEngine engine = new BubbleEngine(count, minSize, maxSize, random);
+        float[] dirX = new float[count];
+        float[] dirY = new float[count];
+        float[] offsets = new float[count];
+        float[] speeds = new float[count];
+        int[] buckets = new int[count];
+        float angleStep = 360f / count;
+        for (int p = 0; p < PATTERNS_COUNT; p++) {
+            float startAngle = 360 * random.nextFloat();
+            for (int i = 0; i < count; i++) {
+                double angle = Math.toRadians(startAngle + angleStep * i);
+                dirX[i] = (float) Math.sin(angle);
+                dirY[i] = (float) -Math.cos(angle);
+                speeds[i] = 0.5f + 0.5f * random.nextFloat();
+                buckets[i] = engine.randomBucket();
+            }
+            engine.storePattern(p, dirX, dirY, offsets, offsets, speeds, buckets);
+        }
+        return engine;
+    }
+
+    /**
+     * Create engine for bubbles spread along horizontal line, half of them flying up and half down.
+     * @param count bubbles count
+     * @param width line width
+     * @param minSize minimum bubble size
+     * @param maxSize maximum bubble size
+     * @param random random used to generate patterns and pick them
+     * @return new engine
+     */
+    @NonNull
+    public static BubbleEngine linear(int count, float width, float minSize, float maxSize, @NonNull Random random) {
+        BubbleEngine engine = new BubbleEngine(count, minSize, maxSize, random);
+        float[] dirX = new float[count];
+        float[] dirY = new float[count];
+        float[] offsetX = new float[count];
+        float[] offsetY = new float[count];
+        float[] speeds = new float[count];
+        int[] buckets = new int[count];
+        int half = Math.max(1, count / 2);
+        float step = width / half;
+        for (int p = 0; p < PATTERNS_COUNT; p++) {
+            for (int i = 0; i < count; i++) {
+                int index = i % half;
+                dirY[i] = i < half ? -1 : 1;
+                speeds[i] = 0.3f + 0.7f * random.nextFloat();
+                buckets[i] = engine.randomBucket();
+                offsetX[i] = index * step + step * random.nextFloat() * (random.nextBoolean() ? 1 : -1);
+            }
+            engine.storePattern(p, dirX, dirY, offsetX, offsetY, speeds, buckets);
+        }
+        return engine;
+    }
+
+    private int randomBucket() {
+        return Math.min(SIZE_BUCKETS_COUNT - 1, (int) (random.nextFloat() * SIZE_BUCKETS_COUNT));
+    }
+
+    /**
+     * Store particles of pattern grouped by size bucket.
+     */
+    private void storePattern(int pattern, float[] dirX, float[] dirY, float[] offsetX, float[] offsetY,
+                              float[] speeds, int[] buckets) {
+        int base = pattern * count;
+        int bucketBase = pattern * (SIZE_BUCKETS_COUNT + 1);
+        int position = 0;
+        for (int b = 0; b < SIZE_BUCKETS_COUNT; b++) {
+            bucketStarts[bucketBase + b] = position;
+            for (int i = 0; i < count; i++) {
+                if (buckets[i] != b) {
+                    continue;
+                }
+                int k = base + position;
+                this.dirX[k] = dirX[i];
+                this.dirY[k] = dirY[i];
+                this.offsetX[k] = offsetX[i];
+                this.offsetY[k] = offsetY[i];
+                this.speeds[k] = speeds[i];
+                position++;
+            }
+        }
+        bucketStarts[bucketBase + SIZE_BUCKETS_COUNT] = position;
+    }
+
+    /**
+     * Pick next pattern for a new burst.
+     */
+    public void nextPattern() {
+        pattern = random.nextInt(PATTERNS_COUNT);
+    }
+
+    /**
+     * Update bubble positions.
+     * @param time animation time in range <code>0..1</code>
+     * @param originX x coordinate of origin
+     * @param originY y coordinate of origin
+     * @param distance distance passed by bubble with speed 1 at the end of animation
+     */
+    public void update(float time, float originX, float originY, float distance) {
+        int base = pattern * count;
+        float scale = time * distance;
+        for (int i = 0; i < count; i++) {
+            int k = base + i;
+            float d = scale * speeds[k];
+            points[2 * i] = originX + offsetX[k] + dirX[k] * d;
+            points[2 * i + 1] = originY + offsetY[k] + dirY[k] * d;
+        }
+    }
+
+    /**
+     * Draw bubbles at positions calculated by last {@link #update(float, float, float, float)} call.
+     * @param canvas canvas
+     * @param paint paint, stroke width and cap are changed by this method
+     */
+    public void draw(@NonNull Canvas canvas, @NonNull Paint paint) {
+        int bucketBase = pattern * (SIZE_BUCKETS_COUNT + 1);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        for (int b = 0; b < SIZE_BUCKETS_COUNT; b++) {
+            int start = bucketStarts[bucketBase + b];
+            int end = bucketStarts[bucketBase + b + 1];
+            if (start == end) {
+                continue;
+            }
+            paint.setStrokeWidth(bucketRadii[b] * 2);
+            canvas.drawPoints(points, start * 2, (end - start) * 2, paint);
+        }
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return bubble positions as <code>x, y</code> pairs, grouped by size bucket
+     */
+    @NonNull
+    public float[] points() {
+        return points;
+    }
+}
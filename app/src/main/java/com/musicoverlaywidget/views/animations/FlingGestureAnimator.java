@@ -1,10 +1,6 @@
 package com.musicoverlaywidget.views.animations;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.FloatEvaluator;
-import android.animation.PropertyValuesHolder;
-import android.animation.ValueAnimator;
+import android.support.annotation.NonNull;
 import android.view.View;
 import android.view.WindowManager;
 import android.view.animation.DecelerateInterpolator;
@@ -12,68 +8,56 @@ import android.view.animation.Interpolator;
 
 import com.musicoverlaywidget.managers.TouchCallback;
 import com.musicoverlaywidget.managers.TouchManager;
+import com.musicoverlaywidget.managers.WindowLayoutBatcher;
 
 public class FlingGestureAnimator {
     private static final long DEFAULT_ANIM_DURATION = 200;
-    private final ValueAnimator flingGestureAnimator;
-    private final PropertyValuesHolder dxHolder;
-    private final PropertyValuesHolder dyHolder;
+    private final AnimationChannel flingGestureAnimator;
     private final Interpolator interpolator;
     private final TouchCallback callback;
-    private final WindowManager windowManager;
+    private final WindowLayoutBatcher layoutBatcher;
     private final View view;
     private WindowManager.LayoutParams params;
     private final TouchManager.BoundsChecker boundsChecker;
     private StickyEdgeAnimator stickyEdgeAnimator;
     private float screenWidth;
+    private float startX, startY, endX, endY;
 
-    public FlingGestureAnimator(TouchCallback callback, WindowManager windowManager,
+    public FlingGestureAnimator(@NonNull AnimationClock clock, TouchCallback callback, WindowLayoutBatcher layoutBatcher,
                                 View view, TouchManager.BoundsChecker boundsChecker,
                                 StickyEdgeAnimator stickyEdgeAnimator, float screenWidth) {
         this.callback = callback;
-        this.windowManager = windowManager;
+        this.layoutBatcher = layoutBatcher;
         this.view = view;
         this.params = (WindowManager.LayoutParams) view.getLayoutParams();
         this.boundsChecker = boundsChecker;
         this.stickyEdgeAnimator = stickyEdgeAnimator;
         this.screenWidth = screenWidth;
         interpolator = new DecelerateInterpolator();
-        dxHolder = PropertyValuesHolder.ofFloat("x", 0, 0);
-        dyHolder = PropertyValuesHolder.ofFloat("y", 0, 0);
-        dxHolder.setEvaluator(new FloatEvaluator());
-        dyHolder.setEvaluator(new FloatEvaluator());
-        flingGestureAnimator = ValueAnimator.ofPropertyValuesHolder(dxHolder, dyHolder);
-        flingGestureAnimator.setInterpolator(interpolator);
-        flingGestureAnimator.setDuration(DEFAULT_ANIM_DURATION);
-        flingGestureAnimator.addUpdateListener(animation -> {
-            float newX = (float) animation.getAnimatedValue("x");
-            float newY = (float) animation.getAnimatedValue("y");
-            if (this.callback != null) {
-                this.callback.onMoved(newX - this.params.x, newY - this.params.y);
-            }
-            this.params.x = (int) newX;
-            this.params.y = (int) newY;
-
-            try {
-                this.windowManager.updateViewLayout(this.view, this.params);
-            } catch (IllegalArgumentException e) {
-                animation.cancel();
-            }
-        });
-        flingGestureAnimator.addListener(new AnimatorListenerAdapter() {
+        flingGestureAnimator = new AnimationChannel(clock)
+                .stats(FrameStats.ANIMATION_FLING)
+                .interpolator(interpolator)
+                .duration(DEFAULT_ANIM_DURATION)
+                .listener(this::onUpdate)
+                .onEndListener((channel, canceled) -> this.stickyEdgeAnimator.animate(this.boundsChecker));
+    }
 
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-                FlingGestureAnimator.this.stickyEdgeAnimator.animate(FlingGestureAnimator.this.boundsChecker);
-            }
+    private void onUpdate(@NonNull AnimationChannel channel) {
+        float fraction = channel.fraction();
+        float newX = startX + fraction * (endX - startX);
+        float newY = startY + fraction * (endY - startY);
+        if (this.callback != null) {
+            this.callback.onMoved(newX - this.params.x, newY - this.params.y);
+        }
+        this.params.x = (int) newX;
+        this.params.y = (int) newY;
 
-            @Override
-            public void onAnimationCancel(Animator animation) {
-                super.onAnimationCancel(animation);
-                FlingGestureAnimator.this.stickyEdgeAnimator.animate(FlingGestureAnimator.this.boundsChecker);
-            }
-        });
+        if (this.view.getWindowToken() == null) {
+            // view not attached to window
+            channel.cancel();
+            return;
+        }
+        this.layoutBatcher.move(this.view, this.params);
     }
 
     public void animate(float velocityX, float velocityY) {
@@ -96,8 +80,10 @@ public class FlingGestureAnimator {
 
         newY = params.y + dy;
 
-        dxHolder.setFloatValues(params.x, newX);
-        dyHolder.setFloatValues(params.y, newY);
+        startX = params.x;
+        startY = params.y;
+        endX = newX;
+        endY = newY;
 
         flingGestureAnimator.start();
     }
@@ -0,0 +1,372 @@
+package com.musicoverlaywidget.views.animations;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Frame timing statistics of widget animations.
+ * <p>
+ * For each named animation, intervals between consecutive {@link AnimationClock} frames are
+ * collected into histogram with one millisecond buckets, intervals longer than one and a half
+ * vsync are counted as missed vsyncs. Animation is recorded at most once per clock tick, however many
+ * channels run it. Drag latency from input event to window move is collected
+ * the same way. Processing time of batched drag events is collected with
+ * {@link #BATCH_BUCKET_MICROS} buckets, touch prediction error with one pixel buckets.
+ * <p>
+ * All data is kept in preallocated arrays, recording doesn't allocate.
+ * Must be used from UI thread only, use {@link #snapshot()} to pass data elsewhere.
+ */
+public class FrameStats {
+
+    public static final int ANIMATION_EXPAND = 0;
+    public static final int ANIMATION_COLLAPSE = 1;
+    public static final int ANIMATION_BUBBLES = 2;
+    public static final int ANIMATION_PROGRESS = 3;
+    public static final int ANIMATION_STICKY_EDGE = 4;
+    public static final int ANIMATION_FLING = 5;
+    public static final int ANIMATION_REMOVE_TARGET = 6;
+    public static final int ANIMATIONS_COUNT = 7;
+
+    /**
+     * Number of histogram buckets. Bucket <code>i</code> counts values of <code>i</code> milliseconds,
+     * last bucket counts all longer values.
+     */
+    public static final int BUCKETS_COUNT = 64;
+
+    /**
+     * Width of drag batch processing time histogram bucket in microseconds.
+     */
+    public static final int BATCH_BUCKET_MICROS = 50;
+
+    private static final String[] NAMES = {
+            "expand", "collapse", "bubbles", "progress", "sticky_edge", "fling", "remove_target"
+    };
+
+    private final float vsyncMillis;
+    private final int[][] frameHistograms;
+    private final int[] runs;
+    private final int[] frames;
+    private final int[] missedVsyncs;
+    private final long[] lastStartTimes;
+    private final long[] lastFrameTimes;
+    private final int[] dragLatencies;
+    private final int[] dragBatchTimes;
+    private final int[] predictionErrors;
+    private int dragEvents;
+    private int dragBatches;
+    private int dragBatchSamples;
+    private int predictions;
+    private float predictionGainMillis;
+
+    /**
+     * @param refreshRate display refresh rate in frames per second
+     */
+    public FrameStats(float refreshRate) {
+        if (refreshRate <= 0) {
+            throw new IllegalArgumentException("Refresh rate must be greater than zero.");
+        }
+        this.vsyncMillis = 1000f / refreshRate;
+        this.frameHistograms = new int[ANIMATIONS_COUNT][BUCKETS_COUNT];
+        this.runs = new int[ANIMATIONS_COUNT];
+        this.frames = new int[ANIMATIONS_COUNT];
+        this.missedVsyncs = new int[ANIMATIONS_COUNT];
+        this.lastStartTimes = new long[ANIMATIONS_COUNT];
+        this.lastFrameTimes = new long[ANIMATIONS_COUNT];
+        Arrays.fill(lastStartTimes, Long.MIN_VALUE);
+        Arrays.fill(lastFrameTimes, Long.MIN_VALUE);
+        this.dragLatencies = new int[BUCKETS_COUNT];
+        this.dragBatchTimes = new int[BUCKETS_COUNT];
+        this.predictionErrors = new int[BUCKETS_COUNT];
+    }
+
+    /**
+     * Record first tick of animation run.
+     * @param frameTimeMillis frame time of the tick, channels started together share it
+     */
+    void onStarted(int animation, long frameTimeMillis) {
+        if (lastStartTimes[animation] == frameTimeMillis) {
+            return;
+        }
+        lastStartTimes[animation] = frameTimeMillis;
+        runs[animation]++;
+    }
+
+    /**
+     * Record frame of animation.
+     * @param frameTimeMillis frame time of the tick, other channels of animation in it are ignored
+     * @param intervalMillis time since previous frame of channel
+     */
+    void onFrame(int animation, long frameTimeMillis, long intervalMillis) {
+        if (lastFrameTimes[animation] == frameTimeMillis) {
+            return;
+        }
+        lastFrameTimes[animation] = frameTimeMillis;
+        frames[animation]++;
+        frameHistograms[animation][bucket(intervalMillis)]++;
+        if (intervalMillis > vsyncMillis * 1.5f) {
+            missedVsyncs[animation] += Math.round(intervalMillis / vsyncMillis) - 1;
+        }
+    }
+
+    /**
+     * Record latency between input event and window move caused by it.
+     * @param latencyMillis latency in milliseconds
+     */
+    public void onDragLatency(long latencyMillis) {
+        dragEvents++;
+        dragLatencies[bucket(latencyMillis)]++;
+    }
+
+    /**
+     * Record processing of one batched drag event.
+     * @param samples number of touch samples in batch, including historical ones
+     * @param processingNanos processing time in nanoseconds
+     */
+    public void onDragBatch(int samples, long processingNanos) {
+        dragBatches++;
+        dragBatchSamples += samples;
+        dragBatchTimes[bucket(processingNanos / 1000 / BATCH_BUCKET_MICROS)]++;
+    }
+
+    /**
+     * Record checked touch prediction.
+     * @param errorPx distance between predicted and real position in pixels
+     * @param gainMillis how far ahead position was predicted, i.e. hidden latency, in milliseconds
+     */
+    public void onPrediction(float errorPx, float gainMillis) {
+        predictions++;
+        predictionErrors[bucket(Math.round(errorPx))]++;
+        predictionGainMillis += gainMillis;
+    }
+
+    public void reset() {
+        for (int i = 0; i < ANIMATIONS_COUNT; i++) {
+            clear(frameHistograms[i]);
+        }
+        clear(runs);
+        clear(frames);
+        clear(missedVsyncs);
+        Arrays.fill(lastStartTimes, Long.MIN_VALUE);
+        Arrays.fill(lastFrameTimes, Long.MIN_VALUE);
+        clear(dragLatencies);
+        clear(dragBatchTimes);
+        clear(predictionErrors);
+        dragEvents = 0;
+        dragBatches = 0;
+        dragBatchSamples = 0;
+        predictions = 0;
+        predictionGainMillis = 0;
+    }
+
+    /**
+     * @return copy of collected statistics
+     */
+    @NonNull
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    private static int bucket(long millis) {
+        if (millis < 0) {
+            return 0;
+        }
+        return millis >= BUCKETS_COUNT - 1 ? BUCKETS_COUNT - 1 : (int) millis;
+    }
+
+    private static void clear(int[] array) {
+        for (int i = 0; i < array.length; i++) {
+            array[i] = 0;
+        }
+    }
+
+    /**
+     * Immutable copy of frame statistics.
+     */
+    public static final class Snapshot {
+
+        private final float vsyncMillis;
+        private final int[][] frameHistograms;
+        private final int[] runs;
+        private final int[] frames;
+        private final int[] missedVsyncs;
+        private final int[] dragLatencies;
+        private final int[] dragBatchTimes;
+        private final int[] predictionErrors;
+        private final int dragEvents;
+        private final int dragBatches;
+        private final int dragBatchSamples;
+        private final int predictions;
+        private final float predictionGainMillis;
+
+        private Snapshot(FrameStats stats) {
+            this.vsyncMillis = stats.vsyncMillis;
+            this.frameHistograms = new int[ANIMATIONS_COUNT][];
+            for (int i = 0; i < ANIMATIONS_COUNT; i++) {
+                frameHistograms[i] = stats.frameHistograms[i].clone();
+            }
+            this.runs = stats.runs.clone();
+            this.frames = stats.frames.clone();
+            this.missedVsyncs = stats.missedVsyncs.clone();
+            this.dragLatencies = stats.dragLatencies.clone();
+            this.dragBatchTimes = stats.dragBatchTimes.clone();
+            this.dragEvents = stats.dragEvents;
+            this.dragBatches = stats.dragBatches;
+            this.dragBatchSamples = stats.dragBatchSamples;
+            this.predictionErrors = stats.predictionErrors.clone();
+            this.predictions = stats.predictions;
+            this.predictionGainMillis = stats.predictionGainMillis;
+        }
+
+        /**
+         * @param animation one of <code>ANIMATION_*</code> constants
+         * @return name of animation, suitable as analytics key
+         */
+        @NonNull
+        public static String name(int animation) {
+            return NAMES[animation];
+        }
+
+        /**
+         * @return expected interval between frames in milliseconds
+         */
+        public float vsyncMillis() {
+            return vsyncMillis;
+        }
+
+        /**
+         * @return number of times animation was started, channels started together count once
+         */
+        public int runs(int animation) {
+            return runs[animation];
+        }
+
+        /**
+         * @return number of frames of animation, first frame of each run is not counted
+         */
+        public int frames(int animation) {
+            return frames[animation];
+        }
+
+        /**
+         * @return number of vsyncs without frame while animation was running
+         */
+        public int missedVsyncs(int animation) {
+            return missedVsyncs[animation];
+        }
+
+        /**
+         * @return copy of frame interval histogram, see {@link #BUCKETS_COUNT}
+         */
+        @NonNull
+        public int[] frameIntervals(int animation) {
+            return frameHistograms[animation].clone();
+        }
+
+        /**
+         * @param animation one of <code>ANIMATION_*</code> constants
+         * @param percentile percentile in range <code>[0, 1]</code>
+         * @return frame interval in milliseconds, or <code>-1</code> if there are no frames
+         */
+        public int frameIntervalPercentile(int animation, float percentile) {
+            return FrameStats.percentile(frameHistograms[animation], frames[animation], percentile);
+        }
+
+        public int dragEvents() {
+            return dragEvents;
+        }
+
+        /**
+         * @return copy of drag latency histogram, see {@link #BUCKETS_COUNT}
+         */
+        @NonNull
+        public int[] dragLatencies() {
+            return dragLatencies.clone();
+        }
+
+        /**
+         * @param percentile percentile in range <code>[0, 1]</code>
+         * @return drag latency in milliseconds, or <code>-1</code> if there are no events
+         */
+        public int dragLatencyPercentile(float percentile) {
+            return FrameStats.percentile(dragLatencies, dragEvents, percentile);
+        }
+
+        /**
+         * @return number of processed batched drag events
+         */
+        public int dragBatches() {
+            return dragBatches;
+        }
+
+        /**
+         * @return number of touch samples in all processed batches, including historical ones
+         */
+        public int dragBatchSamples() {
+            return dragBatchSamples;
+        }
+
+        /**
+         * @return copy of drag batch processing time histogram, see {@link #BATCH_BUCKET_MICROS}
+         */
+        @NonNull
+        public int[] dragBatchTimes() {
+            return dragBatchTimes.clone();
+        }
+
+        /**
+         * @param percentile percentile in range <code>[0, 1]</code>
+         * @return drag batch processing time in microseconds, rounded down to bucket width,
+         * or <code>-1</code> if there are no batches
+         */
+        public int dragBatchTimePercentileMicros(float percentile) {
+            int bucket = FrameStats.percentile(dragBatchTimes, dragBatches, percentile);
+            return bucket < 0 ? -1 : bucket * BATCH_BUCKET_MICROS;
+        }
+
+        /**
+         * @return number of checked touch predictions
+         */
+        public int predictions() {
+            return predictions;
+        }
+
+        /**
+         * @return copy of touch prediction error histogram in pixels, see {@link #BUCKETS_COUNT}
+         */
+        @NonNull
+        public int[] predictionErrors() {
+            return predictionErrors.clone();
+        }
+
+        /**
+         * @param percentile percentile in range <code>[0, 1]</code>
+         * @return touch prediction error in pixels, or <code>-1</code> if there are no predictions
+         */
+        public int predictionErrorPercentile(float percentile) {
+            return FrameStats.percentile(predictionErrors, predictions, percentile);
+        }
+
+        /**
+         * @return average latency hidden by touch prediction in milliseconds, or <code>0</code> if there are no predictions
+         */
+        public float averagePredictionGainMillis() {
+            return predictions == 0 ? 0 : predictionGainMillis / predictions;
+        }
+    }
+
+    private static int percentile(int[] histogram, int count, float percentile) {
+        if (count == 0) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(percentile * count);
+        int sum = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            sum += histogram[i];
+            if (sum >= rank && sum > 0) {
+                return i;
+            }
+        }
+        return histogram.length - 1;
+    }
+}
@@ -0,0 +1,83 @@
+package com.musicoverlaywidget.views.animations;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Timeline of several float tracks, precompiled into primitive array.
+ * <p>
+ * Timeline is evaluated once at fixed steps when created. Sampling a frame
+ * is an index lookup plus linear interpolation between two neighbour keyframes for every track.
+ * Tracks must be continuous for interpolation to be exact at step boundaries.
+ */
+public class KeyframeTimeline {
+
+    private final int tracksCount;
+    private final float duration;
+    private final int keyframesCount;
+    private final float step;
+    private final float[] keyframes;
+
+    /**
+     * @param duration timeline duration
+     * @param maxStep maximum distance between keyframes
+     * @param tracksCount number of tracks
+     * @param evaluator evaluator of all tracks at given position, called only from constructor
+     */
+    public KeyframeTimeline(float duration, float maxStep, int tracksCount, @NonNull Evaluator evaluator) {
+        if (duration <= 0 || maxStep <= 0) {
+            throw new IllegalArgumentException("Duration and step must be greater than zero.");
+        }
+        if (tracksCount <= 0) {
+            throw new IllegalArgumentException("Tracks count must be greater than zero.");
+        }
+        this.tracksCount = tracksCount;
+        this.duration = duration;
+        this.keyframesCount = (int) Math.ceil(duration / maxStep) + 1;
+        this.step = duration / (keyframesCount - 1);
+        this.keyframes = new float[keyframesCount * tracksCount];
+        float[] values = new float[tracksCount];
+        for (int i = 0; i < keyframesCount; i++) {
+            float position = i == keyframesCount - 1 ? duration : i * step;
+            evaluator.evaluate(position, values);
+            System.arraycopy(values, 0, keyframes, i * tracksCount, tracksCount);
+        }
+    }
+
+    /**
+     * Sample all tracks at given position.
+     * @param position position on timeline, clamped to <code>0..duration</code>
+     * @param values array for track values, at least {@link #tracksCount()} long
+     */
+    public void sample(float position, @NonNull float[] values) {
+        float f = Math.min(Math.max(position, 0), duration) / step;
+        int index = Math.min((int) f, keyframesCount - 2);
+        float t = Math.min(f - index, 1);
+        int a = index * tracksCount;
+        int b = a + tracksCount;
+        for (int i = 0; i < tracksCount; i++) {
+            float from = keyframes[a + i];
+            values[i] = from + (keyframes[b + i] - from) * t;
+        }
+    }
+
+    public int tracksCount() {
+        return tracksCount;
+    }
+
+    public float duration() {
+        return duration;
+    }
+
+    /**
+     * Evaluator of timeline tracks.
+     */
+    public interface Evaluator {
+
+        /**
+         * Evaluate all tracks.
+         * @param position position on timeline
+         * @param values array for track values
+         */
+        void evaluate(float position, @NonNull float[] values);
+    }
+}
@@ -1,10 +1,6 @@
 package com.musicoverlaywidget.views.animations;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.IntEvaluator;
-import android.animation.PropertyValuesHolder;
-import android.animation.ValueAnimator;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.view.View;
 import android.view.WindowManager;
@@ -13,63 +9,68 @@ import android.view.animation.OvershootInterpolator;
 
 import com.musicoverlaywidget.managers.TouchCallback;
 import com.musicoverlaywidget.managers.TouchManager;
+import com.musicoverlaywidget.managers.WindowLayoutBatcher;
 
 public class StickyEdgeAnimator {
 
     private static final long DEFAULT_ANIM_DURATION = 300;
-    private final PropertyValuesHolder dxHolder;
-    private final PropertyValuesHolder dyHolder;
-    private final ValueAnimator edgeAnimator;
+    private final AnimationChannel edgeAnimator;
     private final Interpolator interpolator;
 
     private final TouchCallback callback;
-    private final WindowManager windowManager;
+    private final WindowLayoutBatcher layoutBatcher;
     private final View view;
 
     private WindowManager.LayoutParams params;
+    private int startX, startY, endX, endY;
+    @Nullable
+    private Runnable afterAnimation;
     private float screenWidth;
     private float screenHeight;
 
-    public StickyEdgeAnimator(TouchCallback callback, WindowManager windowManager,
+    public StickyEdgeAnimator(@NonNull AnimationClock clock, TouchCallback callback, WindowLayoutBatcher layoutBatcher,
                               View view, float screenWidth, float screenHeight) {
         this.callback = callback;
-        this.windowManager = windowManager;
+        this.layoutBatcher = layoutBatcher;
         this.view = view;
         this.screenWidth = screenWidth;
         this.screenHeight = screenHeight;
 
         interpolator = new OvershootInterpolator();
-        dxHolder = PropertyValuesHolder.ofInt("x", 0, 0);
-        dyHolder = PropertyValuesHolder.ofInt("y", 0, 0);
-        dxHolder.setEvaluator(new IntEvaluator());
-        dyHolder.setEvaluator(new IntEvaluator());
-        edgeAnimator = ValueAnimator.ofPropertyValuesHolder(dxHolder, dyHolder);
-        edgeAnimator.setInterpolator(interpolator);
-        edgeAnimator.setDuration(DEFAULT_ANIM_DURATION);
-        edgeAnimator.addUpdateListener(animation -> {
-            int x = (int) animation.getAnimatedValue("x");
-            int y = (int) animation.getAnimatedValue("y");
-            if (this.callback != null) {
-                this.callback.onMoved(x - params.x, y - params.y);
-            }
-            params.x = x;
-            params.y = y;
-            try {
-                this.windowManager.updateViewLayout(this.view, params);
-            } catch (IllegalArgumentException e) {
-                // view not attached to window
-                animation.cancel();
-            }
-        });
-        edgeAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-                if (StickyEdgeAnimator.this.callback != null) {
-                    StickyEdgeAnimator.this.callback.onAnimationCompleted();
-                }
-            }
-        });
+        edgeAnimator = new AnimationChannel(clock)
+                .stats(FrameStats.ANIMATION_STICKY_EDGE)
+                .interpolator(interpolator)
+                .duration(DEFAULT_ANIM_DURATION)
+                .listener(this::onUpdate)
+                .onEndListener(this::onEnd);
+    }
+
+    private void onUpdate(@NonNull AnimationChannel channel) {
+        float fraction = channel.fraction();
+        int x = (int) (startX + fraction * (endX - startX));
+        int y = (int) (startY + fraction * (endY - startY));
+        if (this.callback != null) {
+            this.callback.onMoved(x - params.x, y - params.y);
+        }
+        params.x = x;
+        params.y = y;
+        if (this.view.getWindowToken() == null) {
+            // view not attached to window
+            channel.cancel();
+            return;
+        }
+        this.layoutBatcher.move(this.view, params);
+    }
+
+    private void onEnd(@NonNull AnimationChannel channel, boolean canceled) {
+        if (callback != null) {
+            callback.onAnimationCompleted();
+        }
+        Runnable afterAnimation = this.afterAnimation;
+        this.afterAnimation = null;
+        if (afterAnimation != null) {
+            afterAnimation.run();
+        }
     }
 
     public void animate(TouchManager.BoundsChecker boundsChecker) {
@@ -99,31 +100,34 @@ public class StickyEdgeAnimator {
                 y = bottom;
             }
         }
-        dxHolder.setIntValues(params.x, x);
-        dyHolder.setIntValues(params.y, y);
-        edgeAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationCancel(Animator animation) {
-                super.onAnimationCancel(animation);
-                edgeAnimator.removeListener(this);
-                if (afterAnimation != null) {
-                    afterAnimation.run();
-                }
-            }
-
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-                edgeAnimator.removeListener(this);
-                if (afterAnimation != null) {
-                    afterAnimation.run();
-                }
-            }
-        });
+        startX = params.x;
+        startY = params.y;
+        endX = x;
+        endY = y;
+        this.afterAnimation = afterAnimation;
+        if (startX == endX && startY == endY) {
+            // already at the edge, complete without waiting for an empty animation
+            onEnd(edgeAnimator, false);
+            return;
+        }
         edgeAnimator.start();
     }
 
     public boolean isAnimating() {
         return edgeAnimator.isRunning();
     }
+
+    /**
+     * @return x coordinate of window at the end of last started animation
+     */
+    public int targetX() {
+        return endX;
+    }
+
+    /**
+     * @return y coordinate of window at the end of last started animation
+     */
+    public int targetY() {
+        return endY;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+package com.musicoverlaywidget;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Zero allocation gate of steady state frames.
+ * <p>
+ * Frame phases (animation tick, draw, touch event) are bracketed with {@link #mark()} and
+ * {@link #check(String, String, int, boolean, long)}, any heap memory allocated by current thread
+ * in between is recorded as violation of scenario and phase. Frames that are not steady state,
+ * e.g. warm up frames creating lazy caches, are only counted. Allocated bytes are read from
+ * JVM thread MX bean, its own allocation is measured once and subtracted. Enabled gate also
+ * samples allocation sites of violating phases with {@link AllocationSites}, if flight recorder
+ * is available, and reports the most frequent ones with violation.
+ */
+final class AllocationGate {
+
+    private static final int CALIBRATION_ROUNDS = 100;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final long thread = Thread.currentThread().getId();
+    private final long overhead;
+    private final boolean enabled;
+    private final List<Violation> violations = new ArrayList<>();
+    private final Map<String, int[]> checkedFrames = new HashMap<>();
+    @Nullable
+    private final AllocationSites sites;
+
+    /**
+     * @param enabled false to count allocations without recording violations
+     */
+    AllocationGate(boolean enabled) {
+        this.enabled = enabled;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("Thread allocated memory is not supported by this JVM.");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        sites = enabled && FlightRecorder.isAvailable() ? new AllocationSites() : null;
+        // measured through the same calls as checked phases, first calls may allocate
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+            overhead = Math.min(overhead, allocatedSince(mark()));
+        }
+        this.overhead = overhead;
+    }
+
+    /**
+     * @return number of bytes allocated by current thread so far
+     */
+    long mark() {
+        if (sites != null) {
+            sites.begin();
+        }
+        return threads.getThreadAllocatedBytes(thread);
+    }
+
+    /**
+     * Record violation if anything was allocated since mark in steady state frame.
+     * Must be called on thread that created the gate.
+     * @param scenario scenario name
+     * @param phase frame phase
+     * @param frame frame index in scenario
+     * @param steady false if frame may allocate
+     * @param mark value returned by {@link #mark()} at the start of phase
+     * @return number of bytes allocated since mark
+     */
+    long check(@NonNull String scenario, @NonNull String phase, int frame, boolean steady, long mark) {
+        long allocations = Math.max(0, allocatedSince(mark) - overhead);
+        if (sites != null) {
+            sites.end();
+        }
+        if (!enabled || !steady) {
+            return allocations;
+        }
+        int[] checked = checkedFrames.get(phase);
+        if (checked == null) {
+            checked = new int[1];
+            checkedFrames.put(phase, checked);
+        }
+        checked[0]++;
+        if (allocations <= 0) {
+            return allocations;
+        }
+        int size = violations.size();
+        Violation last = size == 0 ? null : violations.get(size - 1);
+        if (last != null && last.scenario.equals(scenario) && last.phase.equals(phase)) {
+            last.frames++;
+            last.allocations += allocations;
+        } else {
+            violations.add(new Violation(scenario, phase, frame, allocations));
+        }
+        if (sites != null) {
+            sites.violation(violations.size() - 1);
+        }
+        return allocations;
+    }
+
+    boolean passed() {
+        return violations.isEmpty();
+    }
+
+    /**
+     * @param phase frame phase
+     * @return number of steady state frames checked in phase
+     */
+    int checkedFrames(@NonNull String phase) {
+        int[] checked = checkedFrames.get(phase);
+        return checked == null ? 0 : checked[0];
+    }
+
+    private long allocatedSince(long mark) {
+        return threads.getThreadAllocatedBytes(thread) - mark;
+    }
+
+    /**
+     * Gate results, stops sampling of allocation sites.
+     */
+    @NonNull
+    JSONObject report() throws JSONException {
+        Map<Integer, JSONArray> violationSites = new HashMap<>();
+        String sitesError = null;
+        if (sites != null) {
+            try {
+                violationSites = sites.stop();
+            } catch (IOException e) {
+                sitesError = e.toString();
+            }
+        }
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < violations.size(); i++) {
+            Violation violation = violations.get(i);
+            JSONObject json = new JSONObject()
+                    .put("scenario", violation.scenario)
+                    .put("phase", violation.phase)
+                    .put("firstFrame", violation.firstFrame)
+                    .put("frames", violation.frames)
+                    .put("allocatedBytes", violation.allocations);
+            if (sites != null) {
+                JSONArray sites = violationSites.get(i);
+                json.put("sites", sites == null ? new JSONArray() : sites);
+            }
+            array.put(json);
+        }
+        JSONObject checked = new JSONObject();
+        for (Map.Entry<String, int[]> entry : checkedFrames.entrySet()) {
+            checked.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return new JSONObject()
+                .put("passed", passed())
+                .put("checkedFrames", checked)
+                .put("violations", array)
+                .putOpt("sitesError", sitesError);
+    }
+
+    private static final class Violation {
+
+        private final String scenario;
+        private final String phase;
+        private final int firstFrame;
+        private int frames;
+        private long allocations;
+
+        Violation(String scenario, String phase, int firstFrame, long allocations) {
+            this.scenario = scenario;
+            this.phase = phase;
+            this.firstFrame = firstFrame;
+            this.frames = 1;
+            this.allocations = allocations;
+        }
+    }
+}
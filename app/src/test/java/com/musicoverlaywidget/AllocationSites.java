@@ -0,0 +1,199 @@
+package com.musicoverlaywidget;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Allocation sites of violating phases of {@link AllocationGate}, sampled by JDK Flight Recorder.
+ * <p>
+ * Recorder samples allocations which take a new TLAB or don't fit into one, together with their
+ * stack traces. Every checked phase begins {@link PhaseEvent}, it is committed only if the phase
+ * allocated, so samples are matched to violations by thread and by time of the same clock.
+ * Small allocations are sampled only with small TLABs, allocation test task of app module
+ * shrinks them. A violation may still have no samples, its allocated bytes are exact anyway.
+ */
+final class AllocationSites {
+
+    private static final String[] ALLOCATION_EVENTS = {
+            "jdk.ObjectAllocationInNewTLAB", "jdk.ObjectAllocationOutsideTLAB"
+    };
+    private static final int STACK_DEPTH = 8;
+    private static final int MAX_SITES = 5;
+
+    private final Recording recording;
+    private final PhaseEvent phase;
+
+    AllocationSites() {
+        recording = new Recording();
+        for (String event : ALLOCATION_EVENTS) {
+            recording.enable(event).withStackTrace();
+        }
+        recording.enable(PhaseEvent.class).withoutStackTrace();
+        recording.start();
+        phase = new PhaseEvent();
+    }
+
+    /**
+     * Start of checked phase, doesn't allocate.
+     */
+    void begin() {
+        phase.begin();
+    }
+
+    /**
+     * End of checked phase, doesn't allocate.
+     */
+    void end() {
+        phase.end();
+    }
+
+    /**
+     * Record phase ended by {@link #end()} as part of violation.
+     * @param violation index of violation in gate
+     */
+    void violation(int violation) {
+        phase.violation = violation;
+        phase.commit();
+    }
+
+    /**
+     * Stop recording and aggregate samples of violating phases.
+     * @return the most frequent sites of each violation by its index, sites are
+     * <code>{"samples", "allocatedBytes", "objectClass", "stack"}</code> objects
+     */
+    @NonNull
+    Map<Integer, JSONArray> stop() throws IOException, JSONException {
+        File file = File.createTempFile("allocation-gate", ".jfr");
+        List<RecordedEvent> phases = new ArrayList<>();
+        List<RecordedEvent> allocations = new ArrayList<>();
+        try {
+            recording.stop();
+            recording.dump(file.toPath());
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                if (event.getEventType().getName().equals(PhaseEvent.NAME)) {
+                    phases.add(event);
+                } else if (event.getStackTrace() != null) {
+                    allocations.add(event);
+                }
+            }
+        } finally {
+            recording.close();
+            file.delete();
+        }
+        Map<Integer, Map<String, Site>> sites = new HashMap<>();
+        for (RecordedEvent allocation : allocations) {
+            RecordedEvent phase = phaseOf(allocation, phases);
+            if (phase == null) {
+                continue;
+            }
+            int violation = phase.getInt("violation");
+            Map<String, Site> violationSites = sites.get(violation);
+            if (violationSites == null) {
+                violationSites = new HashMap<>();
+                sites.put(violation, violationSites);
+            }
+            String objectClass = allocation.getClass("objectClass").getName();
+            List<String> stack = stack(allocation.getStackTrace());
+            String key = objectClass + stack;
+            Site site = violationSites.get(key);
+            if (site == null) {
+                site = new Site(objectClass, stack);
+                violationSites.put(key, site);
+            }
+            site.samples++;
+            site.allocatedBytes += allocation.getLong("allocationSize");
+        }
+        Map<Integer, JSONArray> result = new HashMap<>();
+        for (Map.Entry<Integer, Map<String, Site>> entry : sites.entrySet()) {
+            List<Site> sorted = new ArrayList<>(entry.getValue().values());
+            Collections.sort(sorted, (a, b) -> Integer.compare(b.samples, a.samples));
+            JSONArray array = new JSONArray();
+            for (int i = 0; i < sorted.size() && i < MAX_SITES; i++) {
+                array.put(sorted.get(i).toJson());
+            }
+            result.put(entry.getKey(), array);
+        }
+        return result;
+    }
+
+    private static RecordedEvent phaseOf(@NonNull RecordedEvent allocation, @NonNull List<RecordedEvent> phases) {
+        Instant time = allocation.getStartTime();
+        long thread = allocation.getThread().getJavaThreadId();
+        for (RecordedEvent phase : phases) {
+            if (phase.getThread().getJavaThreadId() == thread
+                    && !time.isBefore(phase.getStartTime()) && !time.isAfter(phase.getEndTime())) {
+                return phase;
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    private static List<String> stack(@NonNull RecordedStackTrace stackTrace) {
+        List<String> stack = new ArrayList<>();
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        for (int i = 0; i < frames.size() && i < STACK_DEPTH; i++) {
+            RecordedFrame frame = frames.get(i);
+            stack.add(frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                    + ":" + frame.getLineNumber());
+        }
+        return stack;
+    }
+
+    private static final class Site {
+
+        private final String objectClass;
+        private final List<String> stack;
+        private int samples;
+        private long allocatedBytes;
+
+        Site(String objectClass, List<String> stack) {
+            this.objectClass = objectClass;
+            this.stack = stack;
+        }
+
+        JSONObject toJson() throws JSONException {
+            return new JSONObject()
+                    .put("samples", samples)
+                    .put("allocatedBytes", allocatedBytes)
+                    .put("objectClass", objectClass)
+                    .put("stack", new JSONArray(stack));
+        }
+    }
+
+    /**
+     * Checked phase of frame which allocated.
+     */
+    @Name(PhaseEvent.NAME)
+    @Label("Allocating phase")
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+
+        static final String NAME = "com.musicoverlaywidget.AllocatingPhase";
+
+        @Label("Violation")
+        int violation;
+    }
+}
@@ -0,0 +1,25 @@
+package com.musicoverlaywidget;
+
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+
+/**
+ * Robolectric runner that leaves flight recorder API to JVM class loader. Sandbox loads every
+ * class it doesn't know as its own copy, copies of recorder classes can't access JDK internals,
+ * see {@link AllocationSites}.
+ */
+public class FlightRecorderTestRunner extends RobolectricTestRunner {
+
+    public FlightRecorderTestRunner(Class<?> testClass) throws InitializationError {
+        super(testClass);
+    }
+
+    @Override
+    protected InstrumentationConfiguration createClassLoaderConfig(FrameworkMethod method) {
+        return new InstrumentationConfiguration.Builder(super.createClassLoaderConfig(method))
+                .doNotAcquirePackage("jdk.jfr.")
+                .build();
+    }
+}
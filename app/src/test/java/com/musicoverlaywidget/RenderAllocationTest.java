@@ -0,0 +1,41 @@
+package com.musicoverlaywidget;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fails if any steady state frame of {@link RenderBenchmark} allocates: animation ticks, draws
+ * and touch events of drag are checked with {@link AllocationGate}.
+ * <p>
+ * Benchmark runs twice, first run initializes classes and lazy caches of framework and widget
+ * code, only second run is checked. Test JVM must not use C2 compiler, so this test is excluded
+ * from unit test tasks and runs by <code>test&lt;Variant&gt;AllocationTest</code> task of app
+ * module. Robolectric shadows that allocate on every call are replaced, see
+ * {@link ShadowPlainView} and {@link ShadowSimpleGestureDetector}. Failure message lists
+ * violations with their allocation sites, see {@link AllocationSites}.
+ */
+@RunWith(FlightRecorderTestRunner.class)
+@Config(sdk = 33, shadows = {ShadowPlainView.class, ShadowSimpleGestureDetector.class})
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class RenderAllocationTest {
+
+    @Test
+    public void steadyStateFramesDoNotAllocate() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        new RenderBenchmark(context, false).run();
+        RenderBenchmark benchmark = new RenderBenchmark(context, true);
+        JSONObject results = new JSONObject(benchmark.run());
+        assertTrue("no animation frames checked", benchmark.checkedFrames("tick") > 0);
+        assertTrue("no draw frames checked", benchmark.checkedFrames("draw") > 0);
+        assertTrue("no drag frames checked", benchmark.checkedFrames("touch") > 0);
+        assertTrue(results.getJSONObject("allocationGate").toString(2), benchmark.passed());
+    }
+}
@@ -0,0 +1,317 @@
+package com.musicoverlaywidget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.WindowManager;
+
+import com.musicoverlaywidget.views.ExpandCollapseWidget;
+import com.musicoverlaywidget.views.PlayPauseButton;
+import com.musicoverlaywidget.views.RemoveWidgetView;
+import com.musicoverlaywidget.views.animations.AnimationClock;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.robolectric.shadows.ShadowLooper;
+
+/**
+ * Offscreen render benchmark of widget views.
+ * <p>
+ * Views are never attached to window. Each animation is stepped frame by frame with manually
+ * ticked {@link AnimationClock} and every frame is drawn into bitmap backed canvas,
+ * for both software and cached shadow render modes. Drag scenario also feeds touch events
+ * through {@link com.musicoverlaywidget.managers.TouchManager}. In strict mode every steady state
+ * frame is checked with {@link AllocationGate}. Runs on JVM under Robolectric native graphics,
+ * see {@link RenderBenchmarkTest}.
+ */
+final class RenderBenchmark {
+
+    private static final long FRAME_MILLIS = 16;
+    private static final int MAX_FRAMES = 600;
+    private static final int WARMUP_FRAMES = 2;
+    private static final int DRAG_FRAMES = 60;
+    private static final int MOVES_PER_FRAME = 2;
+    private static final float MOVE_STEP = 4;
+    private static final int[] RENDER_MODES = {
+            Configuration.RENDER_MODE_SOFTWARE, Configuration.RENDER_MODE_CACHED_SHADOW
+    };
+
+    private final Context context;
+    private final boolean strict;
+    private final AllocationGate gate;
+    private AnimationClock clock;
+    private long time;
+    private int[] pixels;
+    private int[] prevPixels;
+
+    /**
+     * @param context context
+     * @param strict true to fail on any allocation in steady state frames
+     */
+    RenderBenchmark(@NonNull Context context, boolean strict) {
+        this.context = context;
+        this.strict = strict;
+        this.gate = new AllocationGate(strict);
+    }
+
+    /**
+     * Run all scenarios.
+     * @return results as JSON
+     */
+    @NonNull
+    String run() throws JSONException {
+        JSONArray results = new JSONArray();
+        for (int renderMode : RENDER_MODES) {
+            results.put(runRenderMode(renderMode));
+        }
+        JSONObject json = new JSONObject()
+                .put("frameMillis", FRAME_MILLIS)
+                .put("results", results);
+        if (strict) {
+            json.put("allocationGate", gate.report());
+        }
+        return json.toString(2);
+    }
+
+    /**
+     * @return false if strict run found allocating steady state frames
+     */
+    boolean passed() {
+        return gate.passed();
+    }
+
+    /**
+     * @param phase frame phase, one of <code>touch</code>, <code>tick</code> and <code>draw</code>
+     * @return number of steady state frames checked in phase by strict run
+     */
+    int checkedFrames(@NonNull String phase) {
+        return gate.checkedFrames(phase);
+    }
+
+    private JSONObject runRenderMode(int renderMode) throws JSONException {
+        clock = new AnimationClock(null);
+        time = 0;
+        WidgetBuilder builder = WidgetBuilder.builder()
+                .context(context)
+                .build()
+                .renderMode(renderMode);
+        PlayerWidget widget = new PlayerWidget(builder, clock);
+        widget.controller().duration(60000);
+        widget.controller().position(25000);
+        // progress is delivered to views on next frame callback
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        PlayPauseButton playPauseButton = widget.playPauseButton();
+        ExpandCollapseWidget expandCollapseWidget = widget.expandCollapseWidget();
+        RemoveWidgetView removeWidgetView = widget.removeWidgetView();
+        // touch handling reads window position from layout params, keep remove target out of the way
+        playPauseButton.setLayoutParams(new WindowManager.LayoutParams());
+        WindowManager.LayoutParams removeParams = new WindowManager.LayoutParams();
+        removeParams.y = context.getResources().getDisplayMetrics().heightPixels;
+        removeWidgetView.setLayoutParams(removeParams);
+
+        String mode = renderMode == Configuration.RENDER_MODE_SOFTWARE ? "software" : "cached_shadow";
+        JSONArray scenarios = new JSONArray();
+        scenarios.put(scenario(mode, "bubbles", playPauseButton, playPauseButton::onClick, null));
+        scenarios.put(scenario(mode, "progress", playPauseButton, () -> playPauseButton.enableProgressChanges(true), null));
+        scenarios.put(scenario(mode, "expand", expandCollapseWidget,
+                () -> expandCollapseWidget.expand(ExpandCollapseWidget.DIRECTION_RIGHT), null));
+        scenarios.put(scenario(mode, "collapse", expandCollapseWidget, expandCollapseWidget::collapse, null));
+        scenarios.put(scenario(mode, "remove", removeWidgetView, () -> removeWidgetView.setOverlapped(true), null));
+        Drag drag = new Drag(playPauseButton);
+        scenarios.put(scenario(mode, "drag", playPauseButton, drag::down, drag));
+        return new JSONObject()
+                .put("renderMode", mode)
+                .put("scenarios", scenarios);
+    }
+
+    private JSONObject scenario(@NonNull String mode, @NonNull String name, @NonNull View view,
+                                @NonNull Runnable start, @Nullable Input input) throws JSONException {
+        String site = mode + "/" + name;
+        settle();
+        view.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        int width = view.getMeasuredWidth();
+        int height = view.getMeasuredHeight();
+        view.layout(0, 0, width, height);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        if (pixels == null || pixels.length < width * height) {
+            pixels = new int[width * height];
+            prevPixels = new int[width * height];
+        }
+        bitmap.eraseColor(0);
+        view.draw(canvas);
+        bitmap.getPixels(prevPixels, 0, width, 0, 0, width, height);
+
+        start.run();
+        int frames = 0;
+        long totalNanos = 0, maxNanos = 0, drawNanos = 0;
+        long pixelsTouched = 0;
+        long allocations = 0;
+        while ((input != null || !clock.isIdle()) && frames < MAX_FRAMES) {
+            time += FRAME_MILLIS;
+            boolean steady = frames >= WARMUP_FRAMES;
+            if (input != null && !input.prepare(frames)) {
+                input = null;
+            }
+            long start0 = System.nanoTime();
+            long mark = gate.mark();
+            if (input != null) {
+                input.dispatch();
+                allocations += gate.check(site, "touch", frames, steady && input.steady(), mark);
+            }
+            mark = gate.mark();
+            clock.tick(time);
+            // last animation frame changes widget state, e.g. removes window of collapsed widget
+            allocations += gate.check(site, "tick", frames, steady && !clock.isIdle(), mark);
+            long start1 = System.nanoTime();
+            mark = gate.mark();
+            bitmap.eraseColor(0);
+            view.draw(canvas);
+            allocations += gate.check(site, "draw", frames, steady, mark);
+            long end = System.nanoTime();
+
+            frames++;
+            totalNanos += end - start0;
+            drawNanos += end - start1;
+            maxNanos = Math.max(maxNanos, end - start0);
+            pixelsTouched += touchedPixels(bitmap, width, height);
+        }
+        bitmap.recycle();
+        int count = Math.max(frames, 1);
+        return new JSONObject()
+                .put("name", name)
+                .put("view", view.getClass().getSimpleName())
+                .put("width", width)
+                .put("height", height)
+                .put("frames", frames)
+                .put("nsPerFrame", totalNanos / count)
+                .put("drawNsPerFrame", drawNanos / count)
+                .put("maxNsPerFrame", maxNanos)
+                .put("pixelsTouchedPerFrame", pixelsTouched / count)
+                .put("allocatedBytesPerFrame", allocations / count);
+    }
+
+    /**
+     * Count pixels changed since previous frame.
+     */
+    private int touchedPixels(@NonNull Bitmap bitmap, int width, int height) {
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        int touched = 0;
+        for (int i = 0; i < width * height; i++) {
+            if (pixels[i] != prevPixels[i]) {
+                touched++;
+            }
+        }
+        int[] tmp = prevPixels;
+        prevPixels = pixels;
+        pixels = tmp;
+        return touched;
+    }
+
+    /**
+     * Source of input events fed at the start of frame.
+     */
+    private interface Input {
+
+        /**
+         * Prepare events of frame, not part of measured frame.
+         * @param frame frame index in scenario
+         * @return false if input is finished
+         */
+        boolean prepare(int frame);
+
+        /**
+         * Feed prepared events.
+         */
+        void dispatch();
+
+        /**
+         * @return false if prepared events change widget state, e.g. start drag
+         */
+        boolean steady();
+    }
+
+    /**
+     * Drag of view along x axis followed by release. Like platform input dispatcher,
+     * every frame gets one move event with batched historical samples. Event is obtained from
+     * {@link MotionEvent} pool and previous one is recycled before frame starts, so the same
+     * event instance is reused by every frame and obtaining it is not part of measured frames.
+     * Frame that moves pointer past touch slop starts window drag and is not steady.
+     */
+    private final class Drag implements Input {
+
+        private final View view;
+        private final int touchSlop;
+        private long downTime;
+        private float x;
+        private boolean steady;
+        @Nullable
+        private MotionEvent move;
+
+        Drag(@NonNull View view) {
+            this.view = view;
+            this.touchSlop = ViewConfiguration.get(view.getContext()).getScaledTouchSlop();
+        }
+
+        void down() {
+            downTime = time;
+            x = 0;
+            dispatch(MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, x, 0, 0));
+        }
+
+        @Override
+        public boolean prepare(int frame) {
+            if (move != null) {
+                move.recycle();
+                move = null;
+            }
+            if (frame >= DRAG_FRAMES) {
+                dispatch(MotionEvent.obtain(downTime, time, MotionEvent.ACTION_UP, x, 0, 0));
+                return false;
+            }
+            steady = x > touchSlop;
+            for (int i = MOVES_PER_FRAME - 1; i >= 0; i--) {
+                x += MOVE_STEP;
+                long eventTime = time - i * FRAME_MILLIS / MOVES_PER_FRAME;
+                if (move == null) {
+                    move = MotionEvent.obtain(downTime, eventTime, MotionEvent.ACTION_MOVE, x, 0, 0);
+                } else {
+                    move.addBatch(eventTime, x, 0, 1, 1, 0);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void dispatch() {
+            view.dispatchTouchEvent(move);
+        }
+
+        @Override
+        public boolean steady() {
+            return steady;
+        }
+
+        private void dispatch(@NonNull MotionEvent event) {
+            view.dispatchTouchEvent(event);
+            event.recycle();
+        }
+    }
+
+    /**
+     * Finish animations started by previous scenario.
+     */
+    private void settle() {
+        for (int i = 0; i < MAX_FRAMES && !clock.isIdle(); i++) {
+            time += FRAME_MILLIS;
+            clock.tick(time);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.musicoverlaywidget;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link RenderBenchmark} on JVM and writes results to
+ * <code>build/reports/render-benchmark/results.json</code> of app module.
+ * Views are drawn by Robolectric native graphics into software canvas over bitmap.
+ * Same shadows as in {@link RenderAllocationTest}, so allocated bytes are of widget code.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, shadows = {ShadowPlainView.class, ShadowSimpleGestureDetector.class})
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class RenderBenchmarkTest {
+
+    private static final File RESULTS_FILE = new File("build/reports/render-benchmark/results.json");
+
+    @Test
+    public void run() throws Exception {
+        String results = new RenderBenchmark(RuntimeEnvironment.getApplication(), false).run();
+        write(results);
+        JSONArray renderModes = new JSONObject(results).getJSONArray("results");
+        for (int i = 0; i < renderModes.length(); i++) {
+            JSONObject renderMode = renderModes.getJSONObject(i);
+            JSONArray scenarios = renderMode.getJSONArray("scenarios");
+            for (int j = 0; j < scenarios.length(); j++) {
+                JSONObject scenario = scenarios.getJSONObject(j);
+                String site = renderMode.getString("renderMode") + "/" + scenario.getString("name");
+                assertTrue(site + " rendered no frames", scenario.getInt("frames") > 0);
+                assertTrue(site + " touched no pixels", scenario.getLong("pixelsTouchedPerFrame") > 0);
+            }
+        }
+    }
+
+    private static void write(String results) throws IOException {
+        File dir = RESULTS_FILE.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir.getAbsolutePath());
+        }
+        FileOutputStream out = new FileOutputStream(RESULTS_FILE);
+        try {
+            out.write(results.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.musicoverlaywidget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.support.annotation.NonNull;
+import android.view.View;
+
+import com.musicoverlaywidget.views.ExpandCollapseWidget;
+import com.musicoverlaywidget.views.animations.AnimationClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link Configuration#RENDER_MODE_CACHED_SHADOW} draws the same as
+ * {@link Configuration#RENDER_MODE_SOFTWARE}. Settled views are drawn by Robolectric native
+ * graphics in both modes and compared pixel by pixel, per color channel.
+ * Cached shadow is a blurred bitmap stretched over the shape instead of shadow layer
+ * of paint, so small difference in its falloff is allowed. Uses the same shadows as
+ * {@link RenderBenchmarkTest}, so test classes can share Robolectric sandbox.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, shadows = {ShadowPlainView.class, ShadowSimpleGestureDetector.class})
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class RenderModeEquivalenceTest {
+
+    private static final long FRAME_MILLIS = 16;
+    private static final int MAX_FRAMES = 600;
+
+    /**
+     * Maximum allowed difference of one color channel of a pixel.
+     */
+    private static final int MAX_CHANNEL_DIFF = 8;
+
+    @Test
+    public void playPauseButton() {
+        assertEquivalent("paused", Widget::paused);
+        assertEquivalent("playing", Widget::playing);
+    }
+
+    @Test
+    public void expandCollapseWidget() {
+        assertEquivalent("expanded right", widget -> widget.expanded(ExpandCollapseWidget.DIRECTION_RIGHT));
+        assertEquivalent("expanded left", widget -> widget.expanded(ExpandCollapseWidget.DIRECTION_LEFT));
+    }
+
+    private static void assertEquivalent(@NonNull String name, @NonNull Scene scene) {
+        Context context = RuntimeEnvironment.getApplication();
+        Bitmap software = scene.draw(new Widget(context, Configuration.RENDER_MODE_SOFTWARE));
+        Bitmap cachedShadow = scene.draw(new Widget(context, Configuration.RENDER_MODE_CACHED_SHADOW));
+        assertEquals(name + ": width", software.getWidth(), cachedShadow.getWidth());
+        assertEquals(name + ": height", software.getHeight(), cachedShadow.getHeight());
+        int maxDiff = 0, maxX = 0, maxY = 0;
+        int drawn = 0;
+        for (int y = 0; y < software.getHeight(); y++) {
+            for (int x = 0; x < software.getWidth(); x++) {
+                if (Color.alpha(software.getPixel(x, y)) != 0) {
+                    drawn++;
+                }
+                int diff = channelDiff(software.getPixel(x, y), cachedShadow.getPixel(x, y));
+                if (diff > maxDiff) {
+                    maxDiff = diff;
+                    maxX = x;
+                    maxY = y;
+                }
+            }
+        }
+        assertTrue(name + ": nothing drawn", drawn > 0);
+        assertTrue(name + ": channel differs by " + maxDiff + " at (" + maxX + ", " + maxY + ")",
+                maxDiff <= MAX_CHANNEL_DIFF);
+    }
+
+    private static int channelDiff(int a, int b) {
+        int alpha = Math.abs(Color.alpha(a) - Color.alpha(b));
+        int red = Math.abs(Color.red(a) - Color.red(b));
+        int green = Math.abs(Color.green(a) - Color.green(b));
+        int blue = Math.abs(Color.blue(a) - Color.blue(b));
+        return Math.max(Math.max(alpha, red), Math.max(green, blue));
+    }
+
+    private interface Scene {
+
+        @NonNull
+        Bitmap draw(@NonNull Widget widget);
+    }
+
+    /**
+     * Widget in one render mode, animations are stepped with manually ticked clock.
+     */
+    private static final class Widget {
+
+        private final AnimationClock clock;
+        private final PlayerWidget widget;
+        private long time;
+
+        Widget(@NonNull Context context, int renderMode) {
+            clock = new AnimationClock(null);
+            WidgetBuilder builder = WidgetBuilder.builder()
+                    .context(context)
+                    .build()
+                    .renderMode(renderMode);
+            widget = new PlayerWidget(builder, clock);
+            widget.controller().duration(60000);
+            widget.controller().position(25000);
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        }
+
+        @NonNull
+        Bitmap paused() {
+            return draw(widget.playPauseButton());
+        }
+
+        @NonNull
+        Bitmap playing() {
+            widget.playPauseButton().onClick();
+            settle();
+            return draw(widget.playPauseButton());
+        }
+
+        @NonNull
+        Bitmap expanded(int direction) {
+            widget.expandCollapseWidget().expand(direction);
+            settle();
+            return draw(widget.expandCollapseWidget());
+        }
+
+        private void settle() {
+            for (int i = 0; i < MAX_FRAMES && !clock.isIdle(); i++) {
+                time += FRAME_MILLIS;
+                clock.tick(time);
+            }
+        }
+
+        @NonNull
+        private static Bitmap draw(@NonNull View view) {
+            view.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                    View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+            view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+            Bitmap bitmap = Bitmap.createBitmap(view.getMeasuredWidth(), view.getMeasuredHeight(),
+                    Bitmap.Config.ARGB_8888);
+            view.draw(new Canvas(bitmap));
+            return bitmap;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.musicoverlaywidget;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ViewConfiguration;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+ * Replaces {@link GestureDetector} with simplified detector that doesn't allocate per event.
+ * Platform detector copies every event it gets, on JVM the copy goes through Robolectric
+ * emulation of native input events, which allocates and would be counted as widget allocation
+ * by {@link AllocationGate}. Reports down, scroll past touch slop, single tap up and fling
+ * estimated from down and up events, long press is not detected.
+ */
+@Implements(GestureDetector.class)
+public class ShadowSimpleGestureDetector {
+
+    private GestureDetector.OnGestureListener listener;
+    private int touchSlop;
+    private int minFlingVelocity;
+    @Nullable
+    private MotionEvent down;
+    private boolean scrolling;
+    private float lastX, lastY;
+
+    @Implementation
+    protected void __constructor__(Context context, GestureDetector.OnGestureListener listener) {
+        this.listener = listener;
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        touchSlop = configuration.getScaledTouchSlop();
+        minFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+    }
+
+    @Implementation
+    protected void setIsLongpressEnabled(boolean enabled) {
+    }
+
+    @Implementation
+    protected boolean onTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            if (down != null) {
+                down.recycle();
+            }
+            down = MotionEvent.obtain(event);
+            scrolling = false;
+            lastX = event.getX();
+            lastY = event.getY();
+            return listener.onDown(event);
+        }
+        if (down == null) {
+            return false;
+        }
+        float x = event.getX();
+        float y = event.getY();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE:
+                if (!scrolling) {
+                    float dx = x - down.getX();
+                    float dy = y - down.getY();
+                    if (dx * dx + dy * dy <= touchSlop * touchSlop) {
+                        return false;
+                    }
+                    scrolling = true;
+                }
+                boolean handled = listener.onScroll(down, event, lastX - x, lastY - y);
+                lastX = x;
+                lastY = y;
+                return handled;
+            case MotionEvent.ACTION_UP:
+                if (!scrolling) {
+                    return listener.onSingleTapUp(event);
+                }
+                scrolling = false;
+                long duration = Math.max(1, event.getEventTime() - down.getEventTime());
+                float velocityX = (x - down.getX()) * 1000 / duration;
+                float velocityY = (y - down.getY()) * 1000 / duration;
+                if (Math.abs(velocityX) < minFlingVelocity && Math.abs(velocityY) < minFlingVelocity) {
+                    return false;
+                }
+                return listener.onFling(down, event, velocityX, velocityY);
+            case MotionEvent.ACTION_CANCEL:
+                scrolling = false;
+                return false;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.musicoverlaywidget.managers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link TouchPredictor} with pointer moving at constant velocity, so prediction offset
+ * is velocity times horizon scaled by confidence, which grows by a quarter per prediction.
+ */
+public class TouchPredictorTest {
+
+    private static final long STEP_MILLIS = 8;
+    private static final int HORIZON_MILLIS = 40;
+    private static final float DELTA = 0.01f;
+
+    private VelocityEstimator velocity;
+
+    @Before
+    public void setUp() {
+        velocity = new VelocityEstimator();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void horizonOutOfRange() {
+        new TouchPredictor(TouchPredictor.MAX_HORIZON_MILLIS + 1, 100);
+    }
+
+    @Test
+    public void confidenceGrowsWithEachPrediction() {
+        TouchPredictor predictor = new TouchPredictor(HORIZON_MILLIS, 1000);
+        // 1000 px/s to the right, confidence 0.25, 0.5, 0.75 and 1
+        for (int n = 1; n <= 5; n++) {
+            long time = moveRight(n);
+            predictor.predict(time, 0, time, velocity);
+            assertEquals(time + HORIZON_MILLIS * Math.min(1, 0.25f * n), predictor.predictedX(), DELTA);
+            assertEquals(0, predictor.predictedY(), DELTA);
+        }
+    }
+
+    @Test
+    public void distanceIsClampedToMaxDistance() {
+        float maxDistance = 30;
+        TouchPredictor predictor = new TouchPredictor(HORIZON_MILLIS, maxDistance);
+        // 1000 px/s along both axes, unclamped offset is 40 px along each axis
+        long time = 0;
+        for (int n = 1; n <= 4; n++) {
+            time = move(n, 1, 1);
+            predictor.predict(time, time, time, velocity);
+        }
+        float dx = predictor.predictedX() - time;
+        float dy = predictor.predictedY() - time;
+        assertEquals(maxDistance, (float) Math.hypot(dx, dy), DELTA);
+        assertEquals(dx, dy, DELTA);
+    }
+
+    @Test
+    public void confidenceResetsOnDirectionChange() {
+        TouchPredictor predictor = new TouchPredictor(HORIZON_MILLIS, 1000);
+        long time = 0;
+        for (int n = 1; n <= 4; n++) {
+            time = moveRight(n);
+            predictor.predict(time, 0, time, velocity);
+        }
+        assertEquals(time + HORIZON_MILLIS, predictor.predictedX(), DELTA);
+        // pointer turns back at 1000 px/s
+        float turnX = time;
+        long turnTime = time;
+        velocity.reset();
+        for (; time <= turnTime + 48; time += STEP_MILLIS) {
+            velocity.add(turnX - (time - turnTime), 0, time);
+        }
+        time -= STEP_MILLIS;
+        float x = turnX - (time - turnTime);
+        predictor.predict(x, 0, time, velocity);
+        assertEquals(x, predictor.predictedX(), DELTA);
+        time += STEP_MILLIS;
+        x -= STEP_MILLIS;
+        velocity.add(x, 0, time);
+        predictor.predict(x, 0, time, velocity);
+        assertEquals(x - HORIZON_MILLIS * 0.25f, predictor.predictedX(), DELTA);
+    }
+
+    @Test
+    public void slowPointerIsNotPredicted() {
+        TouchPredictor predictor = new TouchPredictor(HORIZON_MILLIS, 1000);
+        long time = 0;
+        for (; time <= 96; time += STEP_MILLIS) {
+            velocity.add(0.01f * time, 0, time);
+        }
+        time -= STEP_MILLIS;
+        for (int n = 0; n < 4; n++) {
+            predictor.predict(0.01f * time, 0, time, velocity);
+        }
+        assertEquals(0.01f * time, predictor.predictedX(), DELTA);
+        assertFalse(predictor.resolve(0.01f * time, 0, time + HORIZON_MILLIS));
+    }
+
+    @Test
+    public void resolveMeasuresErrorAndGain() {
+        TouchPredictor predictor = new TouchPredictor(HORIZON_MILLIS, 1000);
+        long time = moveRight(1);
+        // confidence 0.25, 10 ms ahead to x + 10
+        predictor.predict(time, 0, time, velocity);
+        long target = time + HORIZON_MILLIS / 4;
+        assertFalse(predictor.resolve(time, 0, time));
+        // prediction made while previous one is pending is not checked
+        velocity.add(time + 4, 0, time + 4);
+        predictor.predict(time + 4, 0, time + 4, velocity);
+        assertFalse(predictor.resolve(time + 4, 0, target - 1));
+        assertTrue(predictor.resolve(target + 3, 4, target));
+        assertEquals(5, predictor.error(), DELTA);
+        assertEquals(HORIZON_MILLIS / 4f, predictor.gainMillis(), DELTA);
+        assertFalse(predictor.resolve(target + 3, 4, target + 1));
+    }
+
+    @Test
+    public void resetClearsPendingPrediction() {
+        TouchPredictor predictor = new TouchPredictor(HORIZON_MILLIS, 1000);
+        long time = moveRight(1);
+        predictor.predict(time, 0, time, velocity);
+        predictor.reset();
+        assertFalse(predictor.resolve(time + HORIZON_MILLIS, 0, time + HORIZON_MILLIS));
+        // confidence starts over
+        predictor.predict(time, 0, time, velocity);
+        assertEquals(time + HORIZON_MILLIS * 0.25f, predictor.predictedX(), DELTA);
+    }
+
+    private long moveRight(int batch) {
+        return move(batch, 1, 0);
+    }
+
+    /**
+     * Feed velocity estimator with batch of pointer moving at constant velocity, the first batch
+     * has samples of 96 ms, next ones add one sample each.
+     * @param batch batch number starting from 1
+     * @param directionX velocity along x axis in pixels per millisecond, x coordinate is its
+     *                   multiple of time
+     * @param directionY velocity along y axis in pixels per millisecond
+     * @return time of newest sample
+     */
+    private long move(int batch, float directionX, float directionY) {
+        long end = 96 + (batch - 1) * STEP_MILLIS;
+        for (long time = batch == 1 ? 0 : end; time <= end; time += STEP_MILLIS) {
+            velocity.add(directionX * time, directionY * time, time);
+        }
+        return end;
+    }
+}
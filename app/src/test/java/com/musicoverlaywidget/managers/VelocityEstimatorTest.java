@@ -0,0 +1,143 @@
+package com.musicoverlaywidget.managers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds {@link VelocityEstimator} with synthetic motion sampled like historical points of
+ * batched move events and checks recovered velocity and acceleration.
+ */
+public class VelocityEstimatorTest {
+
+    private static final long STEP_MILLIS = 8;
+
+    /**
+     * Allowed error of velocity in pixels per second.
+     */
+    private static final float VELOCITY_DELTA = 0.5f;
+
+    /**
+     * Allowed error of acceleration in pixels per second squared.
+     */
+    private static final float ACCELERATION_DELTA = 20f;
+
+    private VelocityEstimator estimator;
+
+    @Before
+    public void setUp() {
+        estimator = new VelocityEstimator();
+    }
+
+    @Test
+    public void linearMotion() {
+        // 500 px/s right, 250 px/s up
+        for (long t = 0; t <= 96; t += STEP_MILLIS) {
+            estimator.add(100 + 0.5f * t, 300 - 0.25f * t, 1000 + t);
+        }
+        assertTrue(estimator.compute(1096));
+        assertEquals(500, estimator.velocityX(), VELOCITY_DELTA);
+        assertEquals(-250, estimator.velocityY(), VELOCITY_DELTA);
+        assertEquals(0, estimator.accelerationX(), ACCELERATION_DELTA);
+        assertEquals(0, estimator.accelerationY(), ACCELERATION_DELTA);
+    }
+
+    @Test
+    public void quadraticMotion() {
+        // x = 200 + 0.3 t + 0.002 t^2, y = 400 - 0.001 t^2, t in milliseconds
+        for (long t = 0; t <= 96; t += STEP_MILLIS) {
+            estimator.add(200 + 0.3f * t + 0.002f * t * t, 400 - 0.001f * t * t, t);
+        }
+        assertTrue(estimator.compute(96));
+        assertEquals((0.3f + 0.004f * 96) * 1000, estimator.velocityX(), VELOCITY_DELTA);
+        assertEquals(-0.002f * 96 * 1000, estimator.velocityY(), VELOCITY_DELTA);
+        assertEquals(4000, estimator.accelerationX(), ACCELERATION_DELTA);
+        assertEquals(-2000, estimator.accelerationY(), ACCELERATION_DELTA);
+    }
+
+    @Test
+    public void samplesOutsideOfHorizonAreIgnored() {
+        // fast motion more than HORIZON_MILLIS before the last sample
+        for (long t = 0; t < 40; t += STEP_MILLIS) {
+            estimator.add(10 * t, 0, t);
+        }
+        for (long t = 40; t <= 40 + VelocityEstimator.HORIZON_MILLIS; t += STEP_MILLIS) {
+            estimator.add(400 + 0.1f * (t - 40), 0, t);
+        }
+        assertTrue(estimator.compute(40 + VelocityEstimator.HORIZON_MILLIS));
+        assertEquals(100, estimator.velocityX(), VELOCITY_DELTA);
+    }
+
+    @Test
+    public void pauseBeforeComputeStopsPointer() {
+        for (long t = 0; t <= 96; t += STEP_MILLIS) {
+            estimator.add(0.5f * t, 0.5f * t, t);
+        }
+        assertTrue(estimator.compute(96 + VelocityEstimator.MAX_GAP_MILLIS + 1));
+        assertEquals(0, estimator.velocityX(), 0);
+        assertEquals(0, estimator.velocityY(), 0);
+        assertEquals(0, estimator.accelerationX(), 0);
+        assertEquals(0, estimator.accelerationY(), 0);
+    }
+
+    @Test
+    public void samplesBeforePauseAreIgnored() {
+        for (long t = 0; t <= 24; t += STEP_MILLIS) {
+            estimator.add(-2 * t, 0, t);
+        }
+        long resumed = 24 + VelocityEstimator.MAX_GAP_MILLIS + 1;
+        for (long t = resumed; t <= resumed + 24; t += STEP_MILLIS) {
+            estimator.add(0.3f * (t - resumed), 0, t);
+        }
+        assertTrue(estimator.compute(resumed + 24));
+        assertEquals(300, estimator.velocityX(), VELOCITY_DELTA);
+        assertEquals(0, estimator.accelerationX(), ACCELERATION_DELTA);
+    }
+
+    @Test
+    public void ringBufferWraps() {
+        // older samples are overwritten, any of them in the fit would break linear motion
+        long step = 4;
+        int samples = VelocityEstimator.CAPACITY * 2 + 5;
+        long first = (samples - VelocityEstimator.CAPACITY) * step;
+        for (int n = 0; n < samples; n++) {
+            long t = n * step;
+            if (t < first) {
+                estimator.add(-1000, 1000, t);
+            } else {
+                estimator.add(0.2f * t, -0.4f * t, t);
+            }
+        }
+        long last = (samples - 1) * step;
+        assertTrue(last - first <= VelocityEstimator.HORIZON_MILLIS);
+        assertTrue(estimator.compute(last));
+        assertEquals(200, estimator.velocityX(), VELOCITY_DELTA);
+        assertEquals(-400, estimator.velocityY(), VELOCITY_DELTA);
+        assertEquals(0, estimator.accelerationX(), ACCELERATION_DELTA);
+    }
+
+    @Test
+    public void sampleWithSameTimeReplacesNewest() {
+        estimator.add(0, 0, 0);
+        estimator.add(5, 0, 10);
+        estimator.add(10, 0, 10);
+        assertTrue(estimator.compute(10));
+        assertEquals(1000, estimator.velocityX(), VELOCITY_DELTA);
+    }
+
+    @Test
+    public void notEnoughSamples() {
+        assertFalse(estimator.compute(0));
+        estimator.add(10, 10, 0);
+        assertFalse(estimator.compute(0));
+        assertEquals(0, estimator.velocityX(), 0);
+        estimator.add(20, 10, 10);
+        assertTrue(estimator.compute(10));
+        estimator.reset();
+        assertFalse(estimator.compute(10));
+        assertEquals(0, estimator.velocityX(), 0);
+    }
+}
@@ -0,0 +1,55 @@
+package com.musicoverlaywidget.benchmark;
+
+import com.musicoverlaywidget.views.animations.BubbleEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Per-frame bubble updates with default bubbles counts of play/pause button and expanded widget.
+ */
+@State(Scope.Thread)
+public class BubbleEngineBenchmark {
+
+    private BubbleEngine radial;
+    private BubbleEngine linear;
+    private float time;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        radial = BubbleEngine.radial(20, 4, 12, random);
+        linear = BubbleEngine.linear(30, 600, 4, 12, random);
+    }
+
+    private float nextTime() {
+        time += 0.013f;
+        if (time > 1) {
+            time -= 1;
+        }
+        return time;
+    }
+
+    @Benchmark
+    public float[] playPauseButtonBubbles() {
+        radial.update(nextTime(), 96, 96, 96);
+        return radial.points();
+    }
+
+    @Benchmark
+    public float[] expandedWidgetBubbles() {
+        linear.update(nextTime(), 24, 96, 96);
+        return linear.points();
+    }
+
+    @Benchmark
+    public float[] nextPattern() {
+        radial.nextPattern();
+        radial.update(0.5f, 96, 96, 96);
+        return radial.points();
+    }
+}
@@ -0,0 +1,40 @@
+package com.musicoverlaywidget.benchmark;
+
+import com.musicoverlaywidget.utils.ColorChanger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Color transition of expand and collapse animations.
+ */
+@State(Scope.Thread)
+public class ColorChangerBenchmark {
+
+    @Param({"0", "1"})
+    public int interpolation;
+
+    private ColorChanger colorChanger;
+    private float dt;
+
+    @Setup
+    public void setUp() {
+        colorChanger = new ColorChanger(interpolation)
+                .fromColor(0xFF6D2E8A)
+                .toColor(0xFFF4F4F4);
+        // build ramp outside of measurement
+        colorChanger.nextColor(0);
+    }
+
+    @Benchmark
+    public int nextColor() {
+        dt += 0.013f;
+        if (dt > 1) {
+            dt -= 1;
+        }
+        return colorChanger.nextColor(dt);
+    }
+}
@@ -0,0 +1,64 @@
+package com.musicoverlaywidget.benchmark;
+
+import com.musicoverlaywidget.utils.DrawableUtils;
+import com.musicoverlaywidget.utils.PiecewiseLinearCurve;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Math helpers evaluated on every animation frame.
+ */
+@State(Scope.Thread)
+public class DrawableUtilsBenchmark {
+
+    private static final float[] BUBBLES_ALPHA = {0, 0, 0, 0.3f, 255, 0.5f, 225, 0.7f, 0, 1f};
+
+    private PiecewiseLinearCurve bubblesAlpha;
+    private float t;
+
+    @Setup
+    public void setUp() {
+        bubblesAlpha = new PiecewiseLinearCurve(BUBBLES_ALPHA);
+    }
+
+    /**
+     * Next time in <code>0..1</code>, so different segments of curves are evaluated.
+     */
+    private float nextTime() {
+        t += 0.013f;
+        if (t > 1) {
+            t -= 1;
+        }
+        return t;
+    }
+
+    @SuppressWarnings("deprecation")
+    @Benchmark
+    public float customFunction() {
+        // same call shape as former per-frame call sites, varargs array is allocated on each call
+        return DrawableUtils.customFunction(nextTime(), 0, 0, 0, 0.3f, 255, 0.5f, 225, 0.7f, 0, 1f);
+    }
+
+    @Benchmark
+    public float piecewiseLinearCurve() {
+        return bubblesAlpha.evaluate(nextTime());
+    }
+
+    @Benchmark
+    public float rotateX() {
+        return DrawableUtils.rotateX(100, 200 - nextTime() * 50, 540, 200, 315 + nextTime() * 30);
+    }
+
+    @Benchmark
+    public float rotateY() {
+        return DrawableUtils.rotateY(100, 200 - nextTime() * 50, 540, 200, 315 + nextTime() * 30);
+    }
+
+    @Benchmark
+    public float normalize() {
+        return DrawableUtils.normalize(nextTime() * 420, 80, 340);
+    }
+}
@@ -0,0 +1,43 @@
+package com.musicoverlaywidget.benchmark;
+
+import com.musicoverlaywidget.managers.VelocityEstimator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Velocity tracking done for every move event of a drag and velocity estimate done on fling.
+ */
+@State(Scope.Thread)
+public class VelocityEstimatorBenchmark {
+
+    private VelocityEstimator velocity;
+    private long time;
+    private float x, y;
+
+    @Setup
+    public void setUp() {
+        velocity = new VelocityEstimator();
+        for (int i = 0; i < VelocityEstimator.CAPACITY; i++) {
+            moveEvent();
+        }
+    }
+
+    @Benchmark
+    public long moveEvent() {
+        // 120 Hz touch sampling, slightly curved drag
+        time += 8;
+        x += 12.5f;
+        y += 3.25f + (time & 15) * 0.1f;
+        velocity.add(x, y, time);
+        return time;
+    }
+
+    @Benchmark
+    public float fling() {
+        velocity.compute(time);
+        return velocity.velocityX() + velocity.velocityY();
+    }
+}
@@ -0,0 +1,11 @@
+package android.graphics;
+
+/**
+ * Plain Java stand-in for platform class, so widget classes can be loaded on JVM.
+ * Drawing does nothing.
+ */
+public class Canvas {
+
+    public void drawPoints(float[] pts, int offset, int count, Paint paint) {
+    }
+}
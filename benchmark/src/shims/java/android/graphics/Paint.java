@@ -0,0 +1,30 @@
+package android.graphics;
+
+/**
+ * Plain Java stand-in for platform class, so widget classes can be loaded on JVM.
+ */
+public class Paint {
+
+    public enum Cap {
+        BUTT, ROUND, SQUARE
+    }
+
+    private Cap strokeCap = Cap.BUTT;
+    private float strokeWidth;
+
+    public void setStrokeCap(Cap cap) {
+        this.strokeCap = cap;
+    }
+
+    public Cap getStrokeCap() {
+        return strokeCap;
+    }
+
+    public void setStrokeWidth(float width) {
+        this.strokeWidth = width;
+    }
+
+    public float getStrokeWidth() {
+        return strokeWidth;
+    }
+}